@@ -3,9 +3,12 @@ import java.net.*;
 import java.security.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
 import java.util.zip.*;
 import javax.crypto.*;
 import javax.crypto.spec.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.nio.file.*;
 import java.time.*;
 
@@ -18,38 +21,57 @@ public class APTSimulator {
     private List<AttackModule> attackModules;
     private List<DefenseModule> defenseModules;
     private ExecutorService executor;
+    private CampaignScheduler scheduler;
     private boolean isRunning;
     private Scanner scanner;
+    private TelemetryStore lastTelemetry;
+    private CoverageStore coverage;
+    private MetricsDashboard dashboard;
     
     public APTSimulator() {
         this.config = new Config();
         this.attackModules = new ArrayList<>();
         this.defenseModules = new ArrayList<>();
-        this.executor = Executors.newCachedThreadPool();
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(cores, cores, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+        this.scheduler = new CampaignScheduler(cores);
         this.isRunning = false;
         this.scanner = new Scanner(System.in);
         
+        Logger.setLevel(config.getLoggingLevel());
         initializeModules();
     }
     
     private void initializeModules() {
-        attackModules.add(new ReconnaissanceModule());
-        attackModules.add(new InitialAccessModule());
-        attackModules.add(new PersistenceModule());
-        attackModules.add(new PrivilegeEscalationModule());
-        attackModules.add(new DefenseEvasionModule());
-        attackModules.add(new CredentialAccessModule());
-        attackModules.add(new DiscoveryModule());
-        attackModules.add(new LateralMovementModule());
-        attackModules.add(new CollectionModule());
-        attackModules.add(new ExfiltrationModule());
-        attackModules.add(new CommandAndControlModule());
-        
-        defenseModules.add(new NetworkMonitoringModule());
-        defenseModules.add(new EndpointProtectionModule());
-        defenseModules.add(new LogAnalysisModule());
-        defenseModules.add(new ThreatIntelligenceModule());
-        defenseModules.add(new IncidentResponseModule());
+        attackModules.addAll(createAttackModules());
+        defenseModules.addAll(createDefenseModules());
+    }
+    
+    static List<AttackModule> createAttackModules() {
+        List<AttackModule> modules = new ArrayList<>();
+        modules.add(new ReconnaissanceModule());
+        modules.add(new InitialAccessModule());
+        modules.add(new PersistenceModule());
+        modules.add(new PrivilegeEscalationModule());
+        modules.add(new DefenseEvasionModule());
+        modules.add(new CredentialAccessModule());
+        modules.add(new DiscoveryModule());
+        modules.add(new LateralMovementModule());
+        modules.add(new CollectionModule());
+        modules.add(new ExfiltrationModule());
+        modules.add(new CommandAndControlModule());
+        return modules;
+    }
+    
+    static List<DefenseModule> createDefenseModules() {
+        List<DefenseModule> modules = new ArrayList<>();
+        modules.add(new NetworkMonitoringModule());
+        modules.add(new EndpointProtectionModule());
+        modules.add(new LogAnalysisModule());
+        modules.add(new ThreatIntelligenceModule());
+        modules.add(new IncidentResponseModule());
+        return modules;
     }
     
     public void start() {
@@ -75,7 +97,8 @@ public class APTSimulator {
         System.out.println("2. Defense Simulation");
         System.out.println("3. Configuration");
         System.out.println("4. Reports");
-        System.out.println("5. Exit");
+        System.out.println("5. Campaign Scheduler");
+        System.out.println("6. Exit");
         System.out.print("Choose an option: ");
     }
     
@@ -94,6 +117,9 @@ public class APTSimulator {
                 reportsMenu();
                 break;
             case "5":
+                schedulerMenu();
+                break;
+            case "6":
                 exit();
                 break;
             default:
@@ -107,7 +133,10 @@ public class APTSimulator {
             System.out.println("1. Run Full APT Campaign");
             System.out.println("2. Individual Attack Modules");
             System.out.println("3. Custom Attack Scenario");
-            System.out.println("4. Back to Main Menu");
+            System.out.println("4. Enterprise Campaign Simulation");
+            System.out.println("5. Service Discovery Lab");
+            System.out.println("6. Credential Attack Lab");
+            System.out.println("7. Back to Main Menu");
             System.out.print("Choose an option: ");
             
             String choice = scanner.nextLine().trim();
@@ -123,6 +152,15 @@ public class APTSimulator {
                     customAttackScenario();
                     break;
                 case "4":
+                    enterpriseSimulationMenu();
+                    break;
+                case "5":
+                    serviceDiscoveryLab();
+                    break;
+                case "6":
+                    credentialAttackLab();
+                    break;
+                case "7":
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -130,6 +168,135 @@ public class APTSimulator {
         }
     }
     
+    // Written so NaN fails the comparison as well.
+    private static boolean validRate(double rate) {
+        return rate >= 0 && rate <= CredentialCampaign.MAX_RATE;
+    }
+    
+    private void serviceDiscoveryLab() {
+        System.out.println("\nService Discovery Lab");
+        System.out.println("Probes run only against bundled loopback stand-in services.");
+        System.out.print("Number of probes [10000]: ");
+        String probesInput = scanner.nextLine().trim();
+        System.out.print("Maximum in-flight connections [2048]: ");
+        String inFlightInput = scanner.nextLine().trim();
+        
+        ReconnaissanceModule recon = null;
+        for (AttackModule module : attackModules) {
+            if (module instanceof ReconnaissanceModule) recon = (ReconnaissanceModule) module;
+        }
+        if (recon == null) {
+            System.out.println("Reconnaissance module is not loaded.");
+            return;
+        }
+        
+        try (StandInServices services = new StandInServices(2)) {
+            long probes = probesInput.isEmpty() ? 10_000 : Long.parseLong(probesInput);
+            int maxInFlight = inFlightInput.isEmpty() ? 2048 : Integer.parseInt(inFlightInput);
+            if (probes <= 0 || maxInFlight <= 0) {
+                System.out.println("Probe and connection counts must be positive.");
+                return;
+            }
+            System.out.printf("Rate limit: %,.0f probes/sec (intensity %d%s), timeout %dms%n",
+                    ServiceDiscovery.probeRate(config), config.getAttackIntensity(),
+                    config.isStealthMode() ? ", stealth" : "", config.getTimeout());
+            
+            DiscoveryReport report = recon.discover(config, services.getAddresses(), probes, maxInFlight);
+            Logger.flush();
+            double seconds = report.elapsedNanos / 1e9;
+            System.out.printf("%nCompleted %,d probes in %.2fs (%,.0f probes/sec), peak in-flight %,d%n",
+                    report.probes, seconds, report.probes / Math.max(seconds, 1e-9), report.peakInFlight);
+            System.out.printf("Probe latency: mean %.0fus, p50 %dus, p99 %dus, max %dus%n",
+                    report.latencyMicros.mean(), report.latencyMicros.percentile(50),
+                    report.latencyMicros.percentile(99), report.latencyMicros.getMax());
+            System.out.printf("%-8s %-18s %8s %8s %8s  %s%n", "Service", "Address", "Open", "Closed", "Timeout", "Banner");
+            for (int i = 0; i < services.getAddresses().size(); i++) {
+                InetSocketAddress address = services.getAddresses().get(i);
+                System.out.printf("%-8s %-18s %,8d %,8d %,8d  %s%n", services.getNames().get(i),
+                        address.getAddress().getHostAddress() + ":" + address.getPort(), report.open[i],
+                        report.closed[i], report.timedOut[i], report.banners[i] == null ? "" : report.banners[i]);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (IOException e) {
+            Logger.flush();
+            System.err.println("Error during service discovery: " + e.getMessage());
+        }
+    }
+    
+    private void credentialAttackLab() {
+        System.out.println("\nCredential Attack Lab");
+        System.out.print("Directory size in accounts [1000000]: ");
+        String accountsInput = scanner.nextLine().trim();
+        System.out.print("Background logins per second [20]: ");
+        String backgroundInput = scanner.nextLine().trim();
+        System.out.print("Spray, stuffing, brute-force attempts per second [5 20 2]: ");
+        String ratesInput = scanner.nextLine().trim();
+        
+        CredentialAccessModule credentials = null;
+        for (AttackModule module : attackModules) {
+            if (module instanceof CredentialAccessModule) credentials = (CredentialAccessModule) module;
+        }
+        if (credentials == null) {
+            System.out.println("Credential access module is not loaded.");
+            return;
+        }
+        
+        try {
+            int accounts = accountsInput.isEmpty() ? 1_000_000 : Integer.parseInt(accountsInput);
+            CredentialCampaign campaign = new CredentialCampaign();
+            if (!backgroundInput.isEmpty()) campaign.backgroundRate = Double.parseDouble(backgroundInput);
+            if (!ratesInput.isEmpty()) {
+                String[] parts = ratesInput.split("\\s+");
+                for (int i = 0; i < Math.min(parts.length, campaign.rates.length); i++) {
+                    campaign.rates[i] = Double.parseDouble(parts[i]);
+                }
+            }
+            if (accounts <= 0 || accounts > 20_000_000) {
+                System.out.println("Directory size must be between 1 and 20,000,000.");
+                return;
+            }
+            if (!validRate(campaign.backgroundRate) || !validRate(campaign.rates[0])
+                    || !validRate(campaign.rates[1]) || !validRate(campaign.rates[2])) {
+                System.out.printf("Rates must be between 0 and %,.0f attempts per second.%n", CredentialCampaign.MAX_RATE);
+                return;
+            }
+            
+            long started = System.nanoTime();
+            IdentityDirectory directory = IdentityDirectory.generate(accounts, config.getRandomSeed(), executor);
+            double buildSeconds = (System.nanoTime() - started) / 1e9;
+            campaign.bruteForceTarget = directory.firstPrivileged();
+            System.out.printf("Directory: %,d accounts in %.2fs, %.1f MB (%d bytes/account)%n", accounts, buildSeconds,
+                    directory.memoryBytes() / 1048576.0, directory.memoryBytes() / accounts);
+            System.out.printf("Brute-force target: %s %s%n", directory.username(campaign.bruteForceTarget),
+                    directory.groupNames(campaign.bruteForceTarget));
+            
+            CredentialAttackDetector detector = new CredentialAttackDetector(campaign);
+            started = System.nanoTime();
+            credentials.simulate(directory, campaign, detector);
+            double seconds = (System.nanoTime() - started) / 1e9;
+            Logger.flush();
+            
+            System.out.printf("%nReplayed %,d authentication attempts (%,d background) in %.2fs, %,.0f events/sec%n",
+                    detector.events, campaign.backgroundAttempts, seconds, detector.events / Math.max(seconds, 1e-9));
+            System.out.printf("Detector tracked %,d sources%n", detector.trackedSources());
+            System.out.printf("%-20s %8s %7s %12s %8s %8s %10s%n", "Attack", "Rate/s", "Tries", "Compromised",
+                    "Alerts", "False", "Latency");
+            for (int kind = 0; kind < CredentialCampaign.KIND_NAMES.length; kind++) {
+                String latency = campaign.rates[kind] <= 0 ? "-" : detector.firstAlert[kind] < 0 ? "missed"
+                        : String.format("%.1fs", (detector.firstAlert[kind] - campaign.starts[kind]) / 1000.0);
+                System.out.printf("%-20s %8.1f %,7d %,12d %,8d %,8d %10s%n", CredentialCampaign.KIND_NAMES[kind],
+                        campaign.rates[kind], campaign.attempts[kind], campaign.compromised[kind],
+                        detector.alerts[kind], detector.falseAlerts[kind], latency);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (InterruptedException | ExecutionException | NoSuchAlgorithmException e) {
+            Logger.flush();
+            System.err.println("Error during credential attack simulation: " + e.getMessage());
+        }
+    }
+    
     private void runFullAPTCampaign() {
         System.out.println("\nStarting Full APT Campaign...");
         System.out.println("This will simulate a complete advanced persistent threat attack.");
@@ -145,14 +312,16 @@ public class APTSimulator {
         
         try {
             for (AttackModule module : attackModules) {
-                System.out.println("Executing: " + module.getName());
+                Logger.info("Executing: {}", module.getName());
                 module.execute(config);
                 Thread.sleep(1000);
             }
             
+            Logger.flush();
             System.out.println("APT campaign completed successfully!");
             
         } catch (Exception e) {
+            Logger.flush();
             System.err.println("Error during APT campaign: " + e.getMessage());
         }
     }
@@ -173,8 +342,9 @@ public class APTSimulator {
                     return;
                 } else if (choice > 0 && choice <= attackModules.size()) {
                     AttackModule module = attackModules.get(choice - 1);
-                    System.out.println("Executing: " + module.getName());
+                    Logger.info("Executing: {}", module.getName());
                     module.execute(config);
+                    Logger.flush();
                 } else {
                     System.out.println("Invalid choice. Please try again.");
                 }
@@ -236,25 +406,374 @@ public class APTSimulator {
         
         try {
             for (AttackModule module : modules) {
-                System.out.println("Executing: " + module.getName());
+                Logger.info("Executing: {}", module.getName());
                 module.execute(config);
                 Thread.sleep(500);
             }
             
+            Logger.flush();
             System.out.println("Custom attack scenario completed successfully!");
             
         } catch (Exception e) {
+            Logger.flush();
             System.err.println("Error during custom attack scenario: " + e.getMessage());
         }
     }
     
+    private void enterpriseSimulationMenu() {
+        while (true) {
+            System.out.println("\nEnterprise Campaign Simulation:");
+            System.out.println("1. Run New Simulation");
+            System.out.println("2. Resume from Checkpoint");
+            System.out.println("3. Replay Recorded Run");
+            System.out.println("4. Run Sharded Simulation");
+            System.out.println("5. Sharded Scaling Demo");
+            System.out.println("6. Back to Attack Menu");
+            System.out.print("Choose an option: ");
+            
+            String choice = scanner.nextLine().trim();
+            
+            switch (choice) {
+                case "1":
+                    runEnterpriseSimulation();
+                    break;
+                case "2":
+                    resumeEnterpriseSimulation();
+                    break;
+                case "3":
+                    replayRecordedRun();
+                    break;
+                case "4":
+                    runShardedSimulation();
+                    break;
+                case "5":
+                    shardedScalingDemo();
+                    break;
+                case "6":
+                    return;
+                default:
+                    System.out.println("Invalid choice. Please try again.");
+            }
+        }
+    }
+    
+    private void runEnterpriseSimulation() {
+        System.out.print("Simulated duration in hours [24]: ");
+        long hours = 24;
+        String input = scanner.nextLine().trim();
+        if (!input.isEmpty()) {
+            try {
+                hours = Long.parseLong(input);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid duration.");
+                return;
+            }
+        }
+        if (hours <= 0 || hours > Long.MAX_VALUE / SimulationEngine.HOUR) {
+            System.out.println("Duration must be a positive number of hours.");
+            return;
+        }
+        System.out.print("Checkpoint directory (blank to disable): ");
+        String directory = scanner.nextLine().trim();
+        System.out.print("Record run to file (blank to disable): ");
+        String recording = scanner.nextLine().trim();
+        System.out.print("Telemetry file, .xtel or .jsonl (blank to disable): ");
+        String telemetryFile = scanner.nextLine().trim();
+        System.out.print("Keep events in memory for threat hunting and drills? (y/N): ");
+        boolean keepEvents = scanner.nextLine().trim().toLowerCase().startsWith("y");
+        
+        SimulationState state = SimulationState.create(config, attackModules.size(), defenseModules.size(),
+                hours * SimulationEngine.HOUR);
+        SimulationEngine engine = new SimulationEngine(config, attackModules, defenseModules, state);
+        RunRecorder recorder = null;
+        TelemetrySink telemetry = null;
+        try {
+            if (!recording.isEmpty()) {
+                recorder = new RunRecorder(Paths.get(recording), config, state, attackModules, defenseModules);
+                engine.enableRecording(recorder);
+            }
+            TelemetrySink sink = coverageStore().newRun(config, attackModules.size());
+            BehaviorMonitor monitor = behaviorMonitor();
+            if (monitor != null) sink = new TelemetryTee(sink, monitor);
+            TelemetryStore store = null;
+            if (keepEvents) {
+                store = new TelemetryStore(attackModuleNames(), defenseModuleNames());
+                sink = new TelemetryTee(sink, store);
+            }
+            if (!telemetryFile.isEmpty()) {
+                Path telemetryPath = Paths.get(telemetryFile);
+                telemetry = TelemetryFormat.forPath(telemetryPath).open(telemetryPath, attackModuleNames(), defenseModuleNames());
+                sink = new TelemetryTee(sink, telemetry);
+            }
+            engine.enableTelemetry(sink);
+            engine.seedCampaign();
+            executeSimulation(engine, directory);
+            if (monitor != null) {
+                System.out.printf("Behavioral baselines flagged %,d of %,d successful attack steps and %,d of %,d ordinary events%n",
+                        monitor.flaggedSteps, monitor.steps, monitor.falseAlarms, monitor.background);
+            }
+            if (store != null) lastTelemetry = store;
+            if (recorder != null) {
+                recorder.close();
+                System.out.println("Recorded run to: " + recording + " (" + recorder.getRecords() + " hourly checkpoints)");
+            }
+            if (telemetry != null) {
+                telemetry.close();
+                System.out.println("Telemetry written to: " + telemetryFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing simulation output: " + e.getMessage());
+        }
+    }
+    
+    private BehaviorMonitor behaviorMonitor() {
+        NetworkMonitoringModule network = null;
+        EndpointProtectionModule endpoint = null;
+        for (DefenseModule module : defenseModules) {
+            if (module instanceof NetworkMonitoringModule) network = (NetworkMonitoringModule) module;
+            if (module instanceof EndpointProtectionModule) endpoint = (EndpointProtectionModule) module;
+        }
+        if (network == null || endpoint == null) return null;
+        return new BehaviorMonitor(network, endpoint, attackModules, config.getRandomSeed());
+    }
+    
+    private void runShardedSimulation() {
+        System.out.print("Simulated duration in hours [24]: ");
+        String hoursInput = scanner.nextLine().trim();
+        System.out.print("Number of workers [4]: ");
+        String workersInput = scanner.nextLine().trim();
+        
+        try {
+            long hours = hoursInput.isEmpty() ? 24 : Long.parseLong(hoursInput);
+            int workers = workersInput.isEmpty() ? 4 : Integer.parseInt(workersInput);
+            if (hours <= 0 || hours > Long.MAX_VALUE / SimulationEngine.HOUR || workers <= 0) {
+                System.out.println("Duration and worker count must be positive.");
+                return;
+            }
+            boolean processes = shardWorkerProcesses();
+            System.out.println("Simulating " + config.getSimulationHosts() + " hosts across " + workers + " workers...");
+            ShardStats stats = new ShardCoordinator(config, hours * SimulationEngine.HOUR, workers, processes).run();
+            Logger.flush();
+            
+            double seconds = stats.elapsedNanos / 1e9;
+            System.out.printf("%nEvents processed: %,d in %.2fs (%,.0f events/sec)%n",
+                    stats.eventsProcessed, seconds, stats.eventsProcessed / Math.max(seconds, 1e-9));
+            System.out.printf("Synchronization rounds: %,d, cross-shard events: %,d, coordinator bytes sent: %,d%n",
+                    stats.rounds, stats.crossShardEvents, stats.bytesSent);
+            System.out.println("Hosts compromised: " + stats.compromised);
+            System.out.println("Hosts contained: " + stats.contained);
+            System.out.println("Defense detections:");
+            for (int i = 0; i < defenseModules.size(); i++) {
+                System.out.println("  - " + defenseModules.get(i).getName() + ": " + stats.detections[i]);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Logger.flush();
+            System.err.println("Error during sharded simulation: " + e.getMessage());
+        }
+    }
+    
+    private boolean shardWorkerProcesses() {
+        if (!ShardCoordinator.canLaunchProcesses()) {
+            System.out.println("Compiled classes not found on the class path; running workers as threads over loopback.");
+            return false;
+        }
+        System.out.print("Launch workers as separate JVMs? (Y/n): ");
+        return !scanner.nextLine().trim().toLowerCase().startsWith("n");
+    }
+    
+    private void shardedScalingDemo() {
+        System.out.print("Simulated duration in hours [168]: ");
+        String hoursInput = scanner.nextLine().trim();
+        
+        try {
+            long hours = hoursInput.isEmpty() ? 168 : Long.parseLong(hoursInput);
+            if (hours <= 0 || hours > Long.MAX_VALUE / SimulationEngine.HOUR) {
+                System.out.println("Duration must be a positive number of hours.");
+                return;
+            }
+            long endTime = hours * SimulationEngine.HOUR;
+            boolean processes = shardWorkerProcesses();
+            
+            System.out.println("Running single-process reference for " + config.getSimulationHosts() + " hosts...");
+            SimulationState reference = SimulationState.create(config, attackModules.size(), defenseModules.size(), endTime);
+            SimulationEngine engine = new SimulationEngine(config, attackModules, defenseModules, reference);
+            engine.seedCampaign();
+            long start = System.nanoTime();
+            engine.run();
+            double referenceSeconds = (System.nanoTime() - start) / 1e9;
+            ShardStats expected = ShardStats.of(reference);
+            System.out.printf("Reference: %,d events in %.2fs%n%n", expected.eventsProcessed, referenceSeconds);
+            
+            System.out.printf("%7s %12s %8s %12s %9s %14s %8s %10s%n",
+                    "Workers", "Events", "Rounds", "Cross-shard", "Time", "Events/sec", "Speedup", "Identical");
+            double baseline = 0;
+            for (int workers = 1; workers <= 8; workers *= 2) {
+                ShardStats stats = new ShardCoordinator(config, endTime, workers, processes).run();
+                double seconds = stats.elapsedNanos / 1e9;
+                if (workers == 1) baseline = seconds;
+                System.out.printf("%7d %,12d %,8d %,12d %8.2fs %,14.0f %7.2fx %10s%n", workers, stats.eventsProcessed,
+                        stats.rounds, stats.crossShardEvents, seconds, stats.eventsProcessed / Math.max(seconds, 1e-9),
+                        baseline / Math.max(seconds, 1e-9), stats.sameOutcome(expected) ? "yes" : "NO");
+            }
+            System.out.println("\nAvailable processors: " + Runtime.getRuntime().availableProcessors()
+                    + " (speedup is bounded by the cores available to the workers)");
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Logger.flush();
+            System.err.println("Error during scaling demo: " + e.getMessage());
+        }
+    }
+    
+    private String[] attackModuleNames() {
+        return attackModules.stream().map(AttackModule::getName).toArray(String[]::new);
+    }
+    
+    private String[] defenseModuleNames() {
+        return defenseModules.stream().map(DefenseModule::getName).toArray(String[]::new);
+    }
+    
+    private void resumeEnterpriseSimulation() {
+        System.out.print("Checkpoint directory: ");
+        String directory = scanner.nextLine().trim();
+        
+        try {
+            Path path = Paths.get(directory);
+            List<Integer> sequences = CheckpointFile.list(path);
+            if (sequences.isEmpty()) {
+                System.out.println("No checkpoints found in: " + directory);
+                return;
+            }
+            System.out.println("Available checkpoints:");
+            for (int sequence : sequences) {
+                long clock = CheckpointFile.readClock(CheckpointFile.pathFor(path, sequence));
+                System.out.println("  " + sequence + ". simulated time " + SimulationEngine.formatTime(clock));
+            }
+            System.out.print("Checkpoint to resume [" + sequences.get(sequences.size() - 1) + "]: ");
+            String input = scanner.nextLine().trim();
+            int sequence = input.isEmpty() ? sequences.get(sequences.size() - 1) : Integer.parseInt(input);
+            
+            SimulationState state = CheckpointFile.restore(path, sequence);
+            Config resumed = config.copy();
+            resumed.setSimulationHosts(state.hostCount);
+            resumed.setRandomSeed(state.seed);
+            resumed.setAttackIntensity(state.attackIntensity);
+            resumed.setStealthMode(state.stealthMode);
+            System.out.println("Resuming from checkpoint " + sequence + " at " + SimulationEngine.formatTime(state.clock));
+            executeSimulation(new SimulationEngine(resumed, attackModules, defenseModules, state), directory);
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (Exception e) {
+            System.err.println("Error resuming simulation: " + e.getMessage());
+        }
+    }
+    
+    private void replayRecordedRun() {
+        System.out.print("Recording file: ");
+        String file = scanner.nextLine().trim();
+        
+        try (RunReplayer replayer = new RunReplayer(Paths.get(file), attackModules, defenseModules)) {
+            SimulationState state = replayer.getState();
+            System.out.println("Recorded run: " + state.hostCount + " hosts, seed " + state.seed
+                    + ", until " + SimulationEngine.formatTime(state.endTime));
+            System.out.print("Fast-forward to hour (blank to re-drive the whole run): ");
+            String input = scanner.nextLine().trim();
+            long fastForwardTo = -1;
+            int steps = Integer.MAX_VALUE;
+            if (!input.isEmpty()) {
+                long hour = Long.parseLong(input);
+                if (hour < 0 || hour > Long.MAX_VALUE / SimulationEngine.HOUR - 1) {
+                    System.out.println("Hour must be zero or a positive number of hours.");
+                    return;
+                }
+                fastForwardTo = hour * SimulationEngine.HOUR;
+                System.out.print("Events to step through after fast-forward [10]: ");
+                String stepInput = scanner.nextLine().trim();
+                steps = stepInput.isEmpty() ? 10 : Integer.parseInt(stepInput);
+            }
+            
+            long started = System.nanoTime();
+            replayer.replay(fastForwardTo, steps);
+            long elapsed = System.nanoTime() - started;
+            Logger.flush();
+            
+            System.out.printf("Replayed %,d events in %.2fs, %d checkpoints verified%s%n", state.eventsProcessed,
+                    elapsed / 1e9, replayer.getRecords(),
+                    replayer.isFinished() ? "" : " (paused, " + replayer.getPendingEvents() + " events pending)");
+            printSimulationSummary(state, state.eventsProcessed, elapsed);
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (Exception e) {
+            System.err.println("Error replaying run: " + e.getMessage());
+        }
+    }
+    
+    private void executeSimulation(SimulationEngine engine, String directory) {
+        SimulationState state = engine.getState();
+        System.out.println("Simulating " + state.hostCount + " hosts until " + SimulationEngine.formatTime(state.endTime) + "...");
+        
+        try {
+            CheckpointWriter writer = null;
+            if (!directory.isEmpty() && config.getCheckpointInterval() > 0) {
+                writer = new CheckpointWriter(Paths.get(directory), executor, state);
+                engine.enableCheckpoints(writer, config.getCheckpointInterval() * SimulationEngine.MINUTE);
+            }
+            
+            long processed = state.eventsProcessed;
+            long started = System.nanoTime();
+            LiveMetrics.Campaign campaign = LiveMetrics.begin("enterprise seed " + state.seed, state);
+            engine.enableMetrics(campaign);
+            try {
+                engine.run();
+            } finally {
+                LiveMetrics.end(campaign);
+            }
+            long elapsed = System.nanoTime() - started;
+            processed = state.eventsProcessed - processed;
+            if (writer != null) {
+                writer.close();
+                System.out.println("Checkpoints written: " + writer.getWritten() + " (last #" + state.checkpointSequence + ")");
+            }
+            printSimulationSummary(state, processed, elapsed);
+            
+        } catch (Exception e) {
+            System.err.println("Error during enterprise simulation: " + e.getMessage());
+        }
+    }
+    
+    private void printSimulationSummary(SimulationState state, long processed, long elapsedNanos) {
+        System.out.println("\nSimulation stopped at " + SimulationEngine.formatTime(state.clock));
+        System.out.println("Events processed: " + state.eventsProcessed);
+        System.out.println("Hosts compromised: " + state.countHosts(SimulationState.COMPROMISED));
+        System.out.println("Hosts contained: " + state.countHosts(SimulationState.CONTAINED));
+        System.out.println("Attack techniques (successes/attempts):");
+        for (int i = 0; i < attackModules.size(); i++) {
+            System.out.println("  - " + attackModules.get(i).getName() + ": " + state.successes[i] + "/" + state.attempts[i]);
+        }
+        System.out.println("Defense detections:");
+        for (int i = 0; i < defenseModules.size(); i++) {
+            System.out.println("  - " + defenseModules.get(i).getName() + ": " + state.detections[i]);
+        }
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Wall time: %.2fs (%.0f events/sec)%n", seconds, processed / Math.max(seconds, 1e-9));
+    }
+    
     private void defenseSimulationMenu() {
         while (true) {
             System.out.println("\nDefense Simulation Menu:");
             System.out.println("1. Run Full Defense Simulation");
             System.out.println("2. Individual Defense Modules");
             System.out.println("3. Threat Hunting");
-            System.out.println("4. Back to Main Menu");
+            System.out.println("4. Ingest Lab Logs");
+            System.out.println("5. Incident Response Drill");
+            System.out.println("6. Behavioral Baselines");
+            System.out.println("7. Back to Main Menu");
             System.out.print("Choose an option: ");
             
             String choice = scanner.nextLine().trim();
@@ -270,6 +789,15 @@ public class APTSimulator {
                     threatHunting();
                     break;
                 case "4":
+                    ingestLabLogs();
+                    break;
+                case "5":
+                    incidentResponseDrill();
+                    break;
+                case "6":
+                    behavioralBaselines();
+                    break;
+                case "7":
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -283,14 +811,16 @@ public class APTSimulator {
         
         try {
             for (DefenseModule module : defenseModules) {
-                System.out.println("Executing: " + module.getName());
+                Logger.info("Executing: {}", module.getName());
                 module.execute(config);
                 Thread.sleep(1000);
             }
             
+            Logger.flush();
             System.out.println("Defense simulation completed successfully!");
             
         } catch (Exception e) {
+            Logger.flush();
             System.err.println("Error during defense simulation: " + e.getMessage());
         }
     }
@@ -311,8 +841,9 @@ public class APTSimulator {
                     return;
                 } else if (choice > 0 && choice <= defenseModules.size()) {
                     DefenseModule module = defenseModules.get(choice - 1);
-                    System.out.println("Executing: " + module.getName());
+                    Logger.info("Executing: {}", module.getName());
                     module.execute(config);
+                    Logger.flush();
                 } else {
                     System.out.println("Invalid choice. Please try again.");
                 }
@@ -322,26 +853,260 @@ public class APTSimulator {
         }
     }
     
-    private void threatHunting() {
-        System.out.println("\nThreat Hunting Simulation");
-        System.out.println("Simulating proactive threat hunting activities...");
+    private void ingestLabLogs() {
+        System.out.print("Log file (JSONL, syslog, CSV or Zeek TSV): ");
+        String file = scanner.nextLine().trim();
+        System.out.print("Threat indicator file (blank for built-in): ");
+        String indicators = scanner.nextLine().trim();
         
         try {
-            System.out.println("1. Analyzing network traffic patterns...");
-            Thread.sleep(2000);
-            System.out.println("2. Scanning for suspicious processes...");
-            Thread.sleep(2000);
-            System.out.println("3. Checking for unauthorized access...");
-            Thread.sleep(2000);
-            System.out.println("4. Analyzing log files...");
-            Thread.sleep(2000);
-            System.out.println("5. Correlating threat intelligence...");
-            Thread.sleep(2000);
-            
-            System.out.println("Threat hunting simulation completed!");
+            if (!indicators.isEmpty()) {
+                for (DefenseModule module : defenseModules) {
+                    if (module instanceof ThreatIntelligenceModule) {
+                        int loaded = ((ThreatIntelligenceModule) module).loadIndicators(Paths.get(indicators));
+                        System.out.println("Loaded " + loaded + " threat indicators.");
+                    }
+                }
+            }
             
+            IngestReport report = new LogIngestor(defenseModules, executor).ingest(Paths.get(file));
+            double seconds = report.elapsedNanos / 1e9;
+            System.out.println("\nIngested " + report.records + " records from " + file);
+            System.out.printf("Throughput: %.1f MB/s, %.0f records/sec (%.2fs)%n",
+                    report.bytes / 1048576.0 / seconds, report.records / seconds, seconds);
+            System.out.println("Parse errors: " + report.errors);
+            for (String sample : report.errorSamples) {
+                System.out.println("  - " + sample);
+            }
+            System.out.println("Alerts by module:");
+            for (int i = 0; i < defenseModules.size(); i++) {
+                System.out.println("  - " + defenseModules.get(i).getName() + ": " + report.alerts[i]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error ingesting logs: " + e.getMessage());
+        }
+    }
+    
+    private TelemetryStore loadTelemetry() {
+        System.out.print("Telemetry source ('last', file path, or 'synthetic <events>') [last]: ");
+        String source = scanner.nextLine().trim();
+        
+        TelemetryStore store;
+        long start = System.nanoTime();
+        try {
+            if (source.isEmpty() || source.equals("last")) {
+                if (lastTelemetry == null) {
+                    System.out.println("No enterprise simulation has kept its events in memory yet.");
+                    return null;
+                }
+                store = lastTelemetry;
+            } else if (source.startsWith("synthetic")) {
+                String count = source.substring("synthetic".length()).trim();
+                store = TelemetryStore.synthetic(count.isEmpty() ? 10_000_000 : Integer.parseInt(count),
+                        config.getSimulationHosts(), attackModuleNames(), defenseModuleNames());
+            } else {
+                store = TelemetryStore.load(Paths.get(source));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error loading telemetry: " + e.getMessage());
+            return null;
+        }
+        System.out.printf("Loaded %,d events in %.1f ms%n", store.size(), (System.nanoTime() - start) / 1e6);
+        return store;
+    }
+    
+    private void behavioralBaselines() {
+        System.out.println("\nBehavioral Baselines");
+        System.out.print("Number of events [20000000]: ");
+        String input = scanner.nextLine().trim();
+        
+        NetworkMonitoringModule network = null;
+        EndpointProtectionModule endpoint = null;
+        for (DefenseModule module : defenseModules) {
+            if (module instanceof NetworkMonitoringModule) network = (NetworkMonitoringModule) module;
+            if (module instanceof EndpointProtectionModule) endpoint = (EndpointProtectionModule) module;
+        }
+        if (network == null || endpoint == null) {
+            System.out.println("Network monitoring and endpoint protection modules are required.");
+            return;
+        }
+        
+        try {
+            long events = input.isEmpty() ? 20_000_000 : Long.parseLong(input);
+            int hosts = config.getSimulationHosts();
+            System.out.printf("Streaming %,d flow and process events across %,d hosts...%n", events, hosts);
+            BaselineReport report = BaselineBenchmark.run(network, endpoint, hosts, events, config.getRandomSeed(), executor);
+            double seconds = report.elapsedNanos / 1e9;
+            System.out.printf("Scored %,d events in %.2fs (%,.0f events/sec on %d threads)%n",
+                    report.events, seconds, report.events / Math.max(seconds, 1e-9), report.threads);
+            System.out.printf("Baseline state: %,.1f MB (%d bytes per host and per user in each module)%n",
+                    report.memoryBytes / 1048576.0, report.memoryBytes / 4 / Math.max(1, hosts));
+            System.out.printf("Past warm-up: %,d events, %,d injected anomalies%n", report.scored, report.injected);
+            if (report.scored == 0) {
+                System.out.println("No host has passed the " + HostBaselines.WARMUP + "-event warm-up yet; stream more events.");
+                return;
+            }
+            System.out.printf("Flagged: %,d, true positives: %,d (recall %.1f%%, precision %.1f%%)%n",
+                    report.flagged, report.truePositives,
+                    100.0 * report.truePositives / Math.max(1, report.injected),
+                    100.0 * report.truePositives / Math.max(1, report.flagged));
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error scoring baselines: " + e.getCause().getMessage());
+        } catch (OutOfMemoryError e) {
+            System.err.println("Not enough memory for " + config.getSimulationHosts() + " host baselines.");
+        }
+    }
+    
+    private void incidentResponseDrill() {
+        System.out.println("\nIncident Response Drill");
+        TelemetryStore store = loadTelemetry();
+        if (store == null) return;
+        
+        IncidentResponseModule responder = null;
+        for (DefenseModule module : defenseModules) {
+            if (module instanceof IncidentResponseModule) responder = (IncidentResponseModule) module;
+        }
+        if (responder == null) {
+            System.out.println("Incident response module is not loaded.");
+            return;
+        }
+        
+        System.out.print("Alert aggregation window ('tumbling <duration>', 'sliding <duration>', blank for none): ");
+        String window = scanner.nextLine().trim().toLowerCase();
+        if (!window.isEmpty()) {
+            System.out.print("Aggregation keys (host, rule, technique) [host,rule]: ");
+            String keys = scanner.nextLine().trim();
+            try {
+                String[] parts = window.split("\\s+");
+                if (parts.length != 2 || !(parts[0].equals("tumbling") || parts[0].equals("sliding"))) {
+                    System.out.println("Invalid aggregation window.");
+                    return;
+                }
+                store = aggregateAlerts(store, parts[0].equals("sliding"), HuntQuery.duration(parts[1]),
+                        AlertAggregator.parseKeys(keys.isEmpty() ? "host,rule" : keys));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid aggregation settings: " + e.getMessage());
+                return;
+            } catch (IOException e) {
+                System.err.println("Error aggregating alerts: " + e.getMessage());
+                return;
+            }
+        }
+        
+        try {
+            IncidentReport report = responder.respond(store, config, executor);
+            Logger.flush();
+            double seconds = report.elapsedNanos / 1e9;
+            System.out.printf("Processed %,d alerts in %.2fs (%,.0f alerts/sec) across %d analyst teams%n",
+                    report.alerts, seconds, report.alerts / Math.max(seconds, 1e-9), report.partitions);
+            System.out.printf("Incidents opened: %,d, resolved: %,d, duplicate alerts folded: %,d%n",
+                    report.incidents, report.resolved, report.duplicates);
+            System.out.printf("Peak open incidents (sum of team peaks): %,d%n", report.peakOpen);
+            System.out.printf("Analyst utilization: %.1f%% of %d analysts over %s%n",
+                    100.0 * report.analystBusy / Math.max(1.0, (double) report.analysts * report.makespan),
+                    report.analysts, SimulationEngine.formatTime(report.makespan));
+            System.out.println("Latency (simulated)        mean       p50       p90       p99       max");
+            printLatency("Time to detect", report.detect);
+            printLatency("Time to contain", report.contain);
+            printLatency("Time to recover", report.recover);
+            printLatency("Queue wait", report.queueWait);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Logger.flush();
+            System.err.println("Error during incident response: " + e.getCause().getMessage());
+        }
+    }
+    
+    private TelemetryStore aggregateAlerts(TelemetryStore store, boolean sliding, long window, int keys) throws IOException {
+        TelemetryStore output = new TelemetryStore(store.techniqueNames.toArray(new String[0]),
+                store.sensorNames.toArray(new String[0]), Math.max(16, store.size() / 2));
+        AlertAggregator aggregator = new AlertAggregator(output, sliding, window, keys);
+        long start = System.nanoTime();
+        for (int i = 0; i < store.size(); i++) {
+            aggregator.record(store.times[i], store.hosts[i], store.kinds[i], store.techniques[i], store.sensors[i], store.peers[i]);
+        }
+        aggregator.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        System.out.printf("Aggregated %,d alerts into %,d (%.1f%% reduction) in %.2fs (%,.0f events/sec)%n",
+                aggregator.alertsIn, aggregator.alertsOut,
+                100.0 * (aggregator.alertsIn - aggregator.alertsOut) / Math.max(1, aggregator.alertsIn),
+                seconds, store.size() / Math.max(seconds, 1e-9));
+        System.out.printf("Peak open groups: %,d, largest group: %,d alerts%n", aggregator.peakLive, aggregator.largestGroup);
+        System.out.println("Latency (simulated)        mean       p50       p90       p99       max");
+        printLatency("Added by aggregation", aggregator.addedLatency);
+        return output;
+    }
+    
+    private void printLatency(String label, LatencyHistogram histogram) {
+        System.out.printf("%-20s %9s %9s %9s %9s %9s%n", label, formatMinutes((long) histogram.mean()),
+                formatMinutes(histogram.percentile(50)), formatMinutes(histogram.percentile(90)),
+                formatMinutes(histogram.percentile(99)), formatMinutes(histogram.getMax()));
+    }
+    
+    private static String formatMinutes(long millis) {
+        long minutes = millis / SimulationEngine.MINUTE;
+        return minutes < 120 ? minutes + "m" : String.format("%.1fh", minutes / 60.0);
+    }
+    
+    private void threatHunting() {
+        System.out.println("\nThreat Hunting");
+        TelemetryStore store = loadTelemetry();
+        if (store == null) return;
+        System.out.println("Queries: count | group <column> | top <k> <column> | bucket <duration>");
+        System.out.println("         [where <column> <op> <value> [and ...]]   ('help' for columns, 'exit' to return)");
+        
+        HuntEngine engine = new HuntEngine(store, executor);
+        while (true) {
+            System.out.print("hunt> ");
+            if (!scanner.hasNextLine()) return;
+            String line = scanner.nextLine().trim();
+            if (line.isEmpty()) continue;
+            if (line.equals("exit") || line.equals("quit")) return;
+            if (line.equals("help")) {
+                System.out.println("Columns: " + String.join(", ", TelemetryStore.COLUMNS));
+                System.out.println("Kinds: ATTEMPT, SUCCESS, DETECTION, LATERAL");
+                System.out.println("Techniques: " + store.techniqueNames);
+                System.out.println("Sensors: " + store.sensorNames);
+                System.out.println("Durations take m, h or d suffixes, e.g. bucket 1h where time < 2d");
+                continue;
+            }
+            
+            try {
+                long compileStart = System.nanoTime();
+                HuntQuery query = HuntQuery.parse(line, store);
+                long executeStart = System.nanoTime();
+                long[] counts = engine.execute(query);
+                long formatStart = System.nanoTime();
+                List<String> rows = engine.format(query, counts);
+                long end = System.nanoTime();
+                
+                System.out.println("Plan:");
+                for (String step : engine.plan(query)) {
+                    System.out.println("  " + step);
+                }
+                for (String row : rows) {
+                    System.out.println(row);
+                }
+                double executeSeconds = (formatStart - executeStart) / 1e9;
+                System.out.printf("Timing: compile %.2f ms, execute %.2f ms, format %.2f ms (%,.0f rows/s)%n",
+                        (executeStart - compileStart) / 1e6, executeSeconds * 1e3, (end - formatStart) / 1e6,
+                        executeSeconds > 0 ? store.size() / executeSeconds : 0);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid query: " + e.getMessage());
+            } catch (ExecutionException e) {
+                System.err.println("Error executing query: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
     }
     
@@ -390,6 +1155,10 @@ public class APTSimulator {
         System.out.println("Stealth Mode: " + config.isStealthMode());
         System.out.println("Logging Level: " + config.getLoggingLevel());
         System.out.println("Timeout: " + config.getTimeout() + "ms");
+        System.out.println("Simulation Hosts: " + config.getSimulationHosts());
+        System.out.println("Random Seed: " + config.getRandomSeed());
+        System.out.println("Checkpoint Interval: " + config.getCheckpointInterval() + " min (simulated)");
+        System.out.println("Analyst Count: " + config.getAnalystCount());
     }
     
     private void modifyConfiguration() {
@@ -400,7 +1169,11 @@ public class APTSimulator {
         System.out.println("4. Stealth Mode");
         System.out.println("5. Logging Level");
         System.out.println("6. Timeout");
-        System.out.println("7. Back to Configuration Menu");
+        System.out.println("7. Simulation Hosts");
+        System.out.println("8. Random Seed");
+        System.out.println("9. Checkpoint Interval");
+        System.out.println("10. Analyst Count");
+        System.out.println("11. Back to Configuration Menu");
         System.out.print("Choose an option: ");
         
         String choice = scanner.nextLine().trim();
@@ -459,6 +1232,7 @@ public class APTSimulator {
                     if (level >= 1 && level <= 4) {
                         String[] levels = {"DEBUG", "INFO", "WARN", "ERROR"};
                         config.setLoggingLevel(levels[level - 1]);
+                        Logger.setLevel(levels[level - 1]);
                         System.out.println("Logging level updated to: " + levels[level - 1]);
                     } else {
                         System.out.println("Invalid logging level.");
@@ -478,26 +1252,79 @@ public class APTSimulator {
                 }
                 break;
             case "7":
-                return;
-            default:
-                System.out.println("Invalid choice. Please try again.");
-        }
-    }
-    
-    private void loadConfiguration() {
-        System.out.print("Enter configuration file path: ");
-        String filePath = scanner.nextLine().trim();
-        
-        try {
-            config.loadFromFile(filePath);
-            System.out.println("Configuration loaded successfully from: " + filePath);
-        } catch (Exception e) {
-            System.err.println("Error loading configuration: " + e.getMessage());
-        }
-    }
-    
-    private void saveConfiguration() {
-        System.out.print("Enter configuration file path: ");
+                System.out.print("Enter number of simulated hosts: ");
+                try {
+                    int hosts = Integer.parseInt(scanner.nextLine().trim());
+                    if (hosts > 0) {
+                        config.setSimulationHosts(hosts);
+                        System.out.println("Simulation hosts updated to: " + hosts);
+                    } else {
+                        System.out.println("Host count must be positive.");
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid host count.");
+                }
+                break;
+            case "8":
+                System.out.print("Enter new random seed: ");
+                try {
+                    long seed = Long.parseLong(scanner.nextLine().trim());
+                    config.setRandomSeed(seed);
+                    System.out.println("Random seed updated to: " + seed);
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid seed.");
+                }
+                break;
+            case "9":
+                System.out.print("Enter checkpoint interval in simulated minutes (0 to disable): ");
+                try {
+                    int interval = Integer.parseInt(scanner.nextLine().trim());
+                    if (interval >= 0) {
+                        config.setCheckpointInterval(interval);
+                        System.out.println("Checkpoint interval updated to: " + interval + " min");
+                    } else {
+                        System.out.println("Interval cannot be negative.");
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid interval.");
+                }
+                break;
+            case "10":
+                System.out.print("Enter number of incident response analysts: ");
+                try {
+                    int analysts = Integer.parseInt(scanner.nextLine().trim());
+                    if (analysts > 0) {
+                        config.setAnalystCount(analysts);
+                        System.out.println("Analyst count updated to: " + analysts);
+                    } else {
+                        System.out.println("Analyst count must be positive.");
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid analyst count.");
+                }
+                break;
+            case "11":
+                return;
+            default:
+                System.out.println("Invalid choice. Please try again.");
+        }
+    }
+    
+    private void loadConfiguration() {
+        System.out.print("Enter configuration file path: ");
+        String filePath = scanner.nextLine().trim();
+        
+        try {
+            config.loadFromFile(filePath);
+            Logger.setLevel(config.getLoggingLevel());
+            System.out.println("Configuration loaded successfully from: " + filePath);
+        } catch (Exception e) {
+            System.err.println("Error loading configuration: " + e.getMessage());
+        }
+    }
+    
+    private void saveConfiguration() {
+        System.out.print("Enter configuration file path: ");
         String filePath = scanner.nextLine().trim();
         
         try {
@@ -514,6 +1341,7 @@ public class APTSimulator {
         
         if (confirmation.equals("y") || confirmation.equals("yes")) {
             config = new Config();
+            Logger.setLevel(config.getLoggingLevel());
             System.out.println("Configuration reset to defaults.");
         } else {
             System.out.println("Configuration reset cancelled.");
@@ -528,7 +1356,10 @@ public class APTSimulator {
             System.out.println("3. Generate Comprehensive Report");
             System.out.println("4. View Report History");
             System.out.println("5. Export Reports");
-            System.out.println("6. Back to Main Menu");
+            System.out.println("6. Benchmark Telemetry Formats");
+            System.out.println("7. ATT&CK Coverage Heatmap");
+            System.out.println("8. Live Metrics Dashboard");
+            System.out.println("9. Back to Main Menu");
             System.out.print("Choose an option: ");
             
             String choice = scanner.nextLine().trim();
@@ -550,6 +1381,15 @@ public class APTSimulator {
                     exportReports();
                     break;
                 case "6":
+                    benchmarkTelemetryFormats();
+                    break;
+                case "7":
+                    coverageHeatmap();
+                    break;
+                case "8":
+                    liveMetricsDashboard();
+                    break;
+                case "9":
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -618,6 +1458,110 @@ public class APTSimulator {
         System.out.println("Generate some reports first to see them here.");
     }
     
+    private void benchmarkTelemetryFormats() {
+        System.out.print("Number of events [1000000]: ");
+        String input = scanner.nextLine().trim();
+        System.out.print("Scratch directory [.]: ");
+        String directory = scanner.nextLine().trim();
+        
+        try {
+            int events = input.isEmpty() ? 1_000_000 : Integer.parseInt(input);
+            if (events <= 0) {
+                System.out.println("Event count must be positive.");
+                return;
+            }
+            TelemetryBenchmark.run(Paths.get(directory.isEmpty() ? "." : directory), events,
+                    attackModuleNames(), defenseModuleNames());
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (Exception e) {
+            System.err.println("Error benchmarking telemetry: " + e.getMessage());
+        }
+    }
+    
+    private CoverageStore coverageStore() {
+        if (coverage == null) coverage = new CoverageStore(defenseModules.size());
+        return coverage;
+    }
+    
+    private void liveMetricsDashboard() {
+        if (dashboard != null) {
+            System.out.println("\nDashboard running at " + dashboard.getUrl() + " (" + dashboard.getClients()
+                    + " clients, " + dashboard.getDropped() + " frames skipped for slow clients)");
+            System.out.print("Stop the dashboard? (y/N): ");
+            if (scanner.nextLine().trim().toLowerCase().startsWith("y")) {
+                dashboard.close();
+                dashboard = null;
+                Logger.flush();
+            }
+            return;
+        }
+        System.out.print("\nPort on 127.0.0.1 [8088]: ");
+        String portInput = scanner.nextLine().trim();
+        System.out.print("Update interval in milliseconds [500]: ");
+        String intervalInput = scanner.nextLine().trim();
+        
+        try {
+            int port = portInput.isEmpty() ? 8088 : Integer.parseInt(portInput);
+            long interval = intervalInput.isEmpty() ? 500 : Long.parseLong(intervalInput);
+            if (port < 0 || port > 65535 || interval < 50) {
+                System.out.println("Port must be 0-65535 and the interval at least 50ms.");
+                return;
+            }
+            dashboard = new MetricsDashboard(port, interval, attackModuleNames(), defenseModuleNames());
+            Logger.flush();
+            System.out.println("Dashboard running at " + dashboard.getUrl() + " (stream: " + dashboard.getUrl() + "events)");
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (IOException e) {
+            System.err.println("Error starting dashboard: " + e.getMessage());
+        }
+    }
+    
+    private void coverageHeatmap() {
+        System.out.println("\nATT&CK Coverage (" + coverageStore().getRuns() + " recorded runs)");
+        System.out.print("Kill chains to sample instead of recorded runs [0]: ");
+        String input = scanner.nextLine().trim();
+        
+        try {
+            int count = input.isEmpty() ? 0 : Integer.parseInt(input);
+            if (count < 0) {
+                System.out.println("Sample count cannot be negative.");
+                return;
+            }
+            CoverageStore store = coverageStore();
+            if (count > 0) {
+                // Sampled runs go in a throwaway store so they never mix with recorded simulations.
+                store = new CoverageStore(defenseModules.size());
+                long start = System.nanoTime();
+                store.sample(config, attackModules, defenseModules, count);
+                System.out.printf("Sampled %,d runs in %.2fs%n", count, (System.nanoTime() - start) / 1e9);
+            }
+            if (store.getRuns() == 0) {
+                System.out.println("No runs to aggregate.");
+                return;
+            }
+            
+            CoverageMatrix matrix = CoverageMatrix.aggregate(store, defenseModuleNames(), executor);
+            System.out.printf("Aggregated %,d runs in %.1f ms%n%n", matrix.runs, matrix.elapsedNanos / 1e6);
+            matrix.print(System.out);
+            System.out.println("\nTechniques executed but never detected: " + matrix.blindSpots());
+            
+            System.out.print("Export heatmap to file (.csv or .html, blank to skip): ");
+            String file = scanner.nextLine().trim();
+            if (!file.isEmpty()) {
+                matrix.export(Paths.get(file));
+                System.out.println("Heatmap exported to: " + file);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error computing coverage: " + e.getMessage());
+        }
+    }
+    
     private void exportReports() {
         System.out.println("\nExport Reports");
         System.out.println("1. Export as PDF");
@@ -643,11 +1587,208 @@ public class APTSimulator {
         }
     }
     
+    private void schedulerMenu() {
+        while (true) {
+            System.out.println("\nCampaign Scheduler (" + scheduler.getWorkers() + " workers, " + scheduler.getRunning()
+                    + " running, " + scheduler.getQueued() + " queued):");
+            System.out.println("1. Submit Attack Campaign");
+            System.out.println("2. Submit Defense Baseline Run");
+            System.out.println("3. Submit Seed Sweep");
+            System.out.println("4. View Jobs");
+            System.out.println("5. Cancel Job");
+            System.out.println("6. Set Tenant Quota");
+            System.out.println("7. Scheduler Load Test");
+            System.out.println("8. Back to Main Menu");
+            System.out.print("Choose an option: ");
+            
+            String choice = scanner.nextLine().trim();
+            
+            try {
+                switch (choice) {
+                    case "1":
+                        submitCampaigns(false);
+                        break;
+                    case "2":
+                        submitBaselineRun();
+                        break;
+                    case "3":
+                        submitCampaigns(true);
+                        break;
+                    case "4":
+                        viewJobs();
+                        break;
+                    case "5":
+                        System.out.print("Job id to cancel: ");
+                        long id = Long.parseLong(scanner.nextLine().trim());
+                        System.out.println(scheduler.cancel(id) ? "Cancellation requested for job #" + id + "."
+                                : "Job #" + id + " is not queued or running.");
+                        break;
+                    case "6":
+                        setTenantQuota();
+                        break;
+                    case "7":
+                        schedulerLoadTest();
+                        break;
+                    case "8":
+                        return;
+                    default:
+                        System.out.println("Invalid choice. Please try again.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a valid number.");
+            } catch (IllegalArgumentException | RejectedExecutionException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+    
+    private String promptTenant() {
+        System.out.print("Tenant [default]: ");
+        String tenant = scanner.nextLine().trim();
+        return tenant.isEmpty() ? "default" : tenant;
+    }
+    
+    private JobPriority promptPriority() {
+        System.out.print("Priority (high/normal/low) [normal]: ");
+        return JobPriority.parse(scanner.nextLine().trim());
+    }
+    
+    private void submitCampaigns(boolean sweep) {
+        String tenant = promptTenant();
+        JobPriority priority = promptPriority();
+        System.out.print("Simulated duration in hours [24]: ");
+        String hoursInput = scanner.nextLine().trim();
+        int runs = 1;
+        if (sweep) {
+            System.out.print("Number of seeds to sweep [10]: ");
+            String runsInput = scanner.nextLine().trim();
+            runs = runsInput.isEmpty() ? 10 : Integer.parseInt(runsInput);
+        }
+        long hours = hoursInput.isEmpty() ? 24 : Long.parseLong(hoursInput);
+        if (hours <= 0 || hours > Long.MAX_VALUE / SimulationEngine.HOUR || runs <= 0) {
+            System.out.println("Duration and seed count must be positive.");
+            return;
+        }
+        
+        for (int i = 0; i < runs; i++) {
+            Config snapshot = config.copy();
+            snapshot.setRandomSeed(config.getRandomSeed() + i);
+            double cost = (double) snapshot.getSimulationHosts() * hours / 1e6;
+            ScheduledJob job = scheduler.submit(tenant, "campaign seed " + snapshot.getRandomSeed() + ", " + hours + "h",
+                    priority, cost, queued -> runCampaignJob(queued, snapshot, hours));
+            System.out.println("Submitted job #" + job.id + " (" + job.name + ")");
+        }
+    }
+    
+    // Runs in one-hour windows so cancellation takes effect between windows.
+    private static String runCampaignJob(ScheduledJob job, Config config, long hours) throws IOException {
+        List<AttackModule> attacks = createAttackModules();
+        List<DefenseModule> defenses = createDefenseModules();
+        SimulationState state = SimulationState.create(config, attacks.size(), defenses.size(), hours * SimulationEngine.HOUR);
+        SimulationEngine engine = new SimulationEngine(config, attacks, defenses, state);
+        LiveMetrics.Campaign campaign = LiveMetrics.begin(job.tenant + " #" + job.id, state);
+        engine.enableMetrics(campaign);
+        try {
+            engine.seedCampaign();
+            long horizon = 0;
+            while (horizon <= state.endTime) {
+                if (job.isCancelled()) throw new CancellationException();
+                horizon = Math.min(horizon + SimulationEngine.HOUR, state.endTime + 1);
+                engine.runWindow(horizon);
+            }
+        } finally {
+            LiveMetrics.end(campaign);
+        }
+        return String.format("%,d events, %,d compromised, %,d contained", state.eventsProcessed,
+                state.countHosts(SimulationState.COMPROMISED), state.countHosts(SimulationState.CONTAINED));
+    }
+    
+    private void submitBaselineRun() {
+        String tenant = promptTenant();
+        JobPriority priority = promptPriority();
+        System.out.print("Number of events [5000000]: ");
+        String input = scanner.nextLine().trim();
+        long events = input.isEmpty() ? 5_000_000 : Long.parseLong(input);
+        int hosts = config.getSimulationHosts();
+        long seed = config.getRandomSeed();
+        ScheduledJob job = scheduler.submit(tenant, "baselines " + events + " events", priority, events / 1e6, queued -> {
+            BaselineReport report = BaselineBenchmark.run(new NetworkMonitoringModule(), new EndpointProtectionModule(),
+                    hosts, events, seed, executor);
+            return String.format("%,d scored, %,d flagged, %,d/%,d anomalies caught", report.scored, report.flagged,
+                    report.truePositives, report.injected);
+        });
+        System.out.println("Submitted job #" + job.id + " (" + job.name + ")");
+    }
+    
+    private void viewJobs() {
+        List<ScheduledJob> jobs = scheduler.jobs();
+        System.out.printf("%n%-6s %-12s %-7s %-10s %10s %10s  %s%n", "Job", "Tenant", "Prio", "State", "Wait", "Run", "Name / result");
+        for (ScheduledJob job : jobs.subList(Math.max(0, jobs.size() - 20), jobs.size())) {
+            System.out.printf("#%-5d %-12s %-7s %-10s %9.2fs %9.2fs  %s%s%n", job.id, job.tenant, job.priority,
+                    job.state, job.waitNanos() / 1e9, job.runNanos() / 1e9, job.name,
+                    job.result.isEmpty() ? "" : " -> " + job.result);
+        }
+        if (jobs.size() > 20) System.out.println("(" + (jobs.size() - 20) + " older jobs not shown)");
+        
+        System.out.printf("%n%-12s %6s %7s %7s %7s %7s %9s %9s %10s %10s%n", "Tenant", "Weight", "MaxRun", "MaxQ",
+                "Queued", "Running", "Completed", "Cancelled", "Wait p50", "Wait p99");
+        for (TenantSnapshot tenant : scheduler.tenants()) {
+            System.out.printf("%-12s %6.1f %7d %7d %7d %7d %9d %9d %8dms %8dms%n", tenant.name, tenant.weight,
+                    tenant.maxRunning, tenant.maxQueued, tenant.queued, tenant.running, tenant.completed,
+                    tenant.cancelled, tenant.waitP50Millis, tenant.waitP99Millis);
+        }
+    }
+    
+    private void setTenantQuota() {
+        String tenant = promptTenant();
+        System.out.print("Weight [1]: ");
+        String weightInput = scanner.nextLine().trim();
+        System.out.print("Maximum running jobs [" + scheduler.getWorkers() + "]: ");
+        String runningInput = scanner.nextLine().trim();
+        System.out.print("Maximum queued jobs [" + CampaignScheduler.DEFAULT_MAX_QUEUED + "]: ");
+        String queuedInput = scanner.nextLine().trim();
+        double weight = weightInput.isEmpty() ? 1 : Double.parseDouble(weightInput);
+        int maxRunning = runningInput.isEmpty() ? scheduler.getWorkers() : Integer.parseInt(runningInput);
+        int maxQueued = queuedInput.isEmpty() ? CampaignScheduler.DEFAULT_MAX_QUEUED : Integer.parseInt(queuedInput);
+        if (weight <= 0 || maxRunning <= 0 || maxQueued < 0) {
+            System.out.println("Weight and running limit must be positive.");
+            return;
+        }
+        scheduler.setQuota(tenant, weight, maxRunning, maxQueued);
+        System.out.println("Quota updated for " + tenant + ".");
+    }
+    
+    private void schedulerLoadTest() {
+        System.out.print("Iterations of work per job [200000]: ");
+        String input = scanner.nextLine().trim();
+        long work = input.isEmpty() ? 200_000 : Long.parseLong(input);
+        int workers = scheduler.getWorkers();
+        System.out.println("Tenants " + String.join(", ", SchedulerBenchmark.TENANTS) + " with weights "
+                + Arrays.toString(SchedulerBenchmark.WEIGHTS) + " on " + workers + " workers");
+        System.out.printf("%8s %12s %12s %12s %12s   %s%n", "Jobs", "Elapsed", "Jobs/sec", "Wait p50", "Wait p99", "First-half share");
+        try {
+            for (int jobs : new int[]{10, 100, 1000}) {
+                SchedulerLoadReport report = SchedulerBenchmark.run(workers, jobs, work);
+                double seconds = report.elapsedNanos / 1e9;
+                StringBuilder shares = new StringBuilder();
+                for (Map.Entry<String, Long> share : report.firstHalf.entrySet()) {
+                    shares.append(String.format("%s %.0f%% ", share.getKey(), 100.0 * share.getValue() / Math.max(1, jobs / 2)));
+                }
+                System.out.printf("%,8d %11.3fs %,12.0f %10dms %10dms   %s%n", jobs, seconds, jobs / Math.max(seconds, 1e-9),
+                        report.waitMillis.percentile(50), report.waitMillis.percentile(99), shares.toString().trim());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
     private void exit() {
         System.out.println("\nExiting XILLEN APT Simulator...");
         System.out.println("Thank you for using our tool!");
         
         isRunning = false;
+        if (dashboard != null) dashboard.close();
+        scheduler.close();
         executor.shutdown();
         scanner.close();
         
@@ -659,9 +1800,14 @@ public class APTSimulator {
             executor.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        Logger.shutdown();
     }
     
     public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals(ShardProtocol.WORKER_FLAG)) {
+            ShardWorker.main(args);
+            return;
+        }
         APTSimulator simulator = new APTSimulator();
         simulator.start();
     }
@@ -690,6 +1836,19 @@ abstract class AttackModule {
         return difficulty;
     }
     
+    public double successProbability(Config config) {
+        double chance = 1.0 - difficulty * 0.15 + (config.getAttackIntensity() - 2) * 0.05;
+        return Math.max(0.05, Math.min(0.95, chance));
+    }
+    
+    public long meanDelay(Config config) {
+        long delay = difficulty * 30L * 60_000L;
+        if (config.getAttackIntensity() == 3) delay /= 2;
+        if (config.getAttackIntensity() == 1) delay *= 2;
+        if (config.isStealthMode()) delay *= 2;
+        return delay;
+    }
+    
     public abstract void execute(Config config);
 }
 
@@ -716,6 +1875,16 @@ abstract class DefenseModule {
         return effectiveness;
     }
     
+    public double detectionProbability(Config config, AttackModule technique) {
+        double chance = effectiveness * 0.002 / technique.getDifficulty();
+        if (config.isStealthMode()) chance *= 0.5;
+        return chance * config.getAttackIntensity() / 2.0;
+    }
+    
+    public boolean inspect(LogRecord record) {
+        return false;
+    }
+    
     public abstract void execute(Config config);
 }
 
@@ -726,12 +1895,19 @@ class ReconnaissanceModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing reconnaissance...");
-        System.out.println("  - Scanning network topology");
-        System.out.println("  - Identifying active hosts");
-        System.out.println("  - Discovering open ports and services");
-        System.out.println("  - Gathering system information");
-        System.out.println("  Reconnaissance completed.");
+        Logger.info("Executing reconnaissance...");
+        Logger.debug("Scanning network topology");
+        Logger.debug("Identifying active hosts");
+        Logger.debug("Discovering open ports and services");
+        Logger.debug("Gathering system information");
+        Logger.info("Reconnaissance completed.");
+    }
+    
+    public DiscoveryReport discover(Config config, List<InetSocketAddress> targets, long probes, int maxInFlight) throws IOException {
+        Logger.info("Discovering services on {} targets at up to {} probes/sec", targets.size(), (long) ServiceDiscovery.probeRate(config));
+        DiscoveryReport report = new ServiceDiscovery(targets, config, maxInFlight).run(probes);
+        Logger.info("Service discovery completed: {} probes.", report.probes);
+        return report;
     }
 }
 
@@ -742,12 +1918,12 @@ class InitialAccessModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing initial access...");
-        System.out.println("  - Attempting phishing simulation");
-        System.out.println("  - Testing vulnerable services");
-        System.out.println("  - Exploiting weak credentials");
-        System.out.println("  - Testing social engineering vectors");
-        System.out.println("  Initial access completed.");
+        Logger.info("Executing initial access...");
+        Logger.debug("Attempting phishing simulation");
+        Logger.debug("Testing vulnerable services");
+        Logger.debug("Exploiting weak credentials");
+        Logger.debug("Testing social engineering vectors");
+        Logger.info("Initial access completed.");
     }
 }
 
@@ -758,12 +1934,12 @@ class PersistenceModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing persistence...");
-        System.out.println("  - Installing backdoors");
-        System.out.println("  - Modifying startup scripts");
-        System.out.println("  - Creating scheduled tasks");
-        System.out.println("  - Modifying registry entries");
-        System.out.println("  Persistence established.");
+        Logger.info("Executing persistence...");
+        Logger.debug("Installing backdoors");
+        Logger.debug("Modifying startup scripts");
+        Logger.debug("Creating scheduled tasks");
+        Logger.debug("Modifying registry entries");
+        Logger.info("Persistence established.");
     }
 }
 
@@ -774,12 +1950,12 @@ class PrivilegeEscalationModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing privilege escalation...");
-        System.out.println("  - Exploiting kernel vulnerabilities");
-        System.out.println("  - Testing misconfigurations");
-        System.out.println("  - Exploiting service vulnerabilities");
-        System.out.println("  - Testing weak file permissions");
-        System.out.println("  Privilege escalation completed.");
+        Logger.info("Executing privilege escalation...");
+        Logger.debug("Exploiting kernel vulnerabilities");
+        Logger.debug("Testing misconfigurations");
+        Logger.debug("Exploiting service vulnerabilities");
+        Logger.debug("Testing weak file permissions");
+        Logger.info("Privilege escalation completed.");
     }
 }
 
@@ -790,12 +1966,12 @@ class DefenseEvasionModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing defense evasion...");
-        System.out.println("  - Disabling security tools");
-        System.out.println("  - Modifying logs");
-        System.out.println("  - Using living-off-the-land techniques");
-        System.out.println("  - Implementing anti-analysis measures");
-        System.out.println("  Defense evasion completed.");
+        Logger.info("Executing defense evasion...");
+        Logger.debug("Disabling security tools");
+        Logger.debug("Modifying logs");
+        Logger.debug("Using living-off-the-land techniques");
+        Logger.debug("Implementing anti-analysis measures");
+        Logger.info("Defense evasion completed.");
     }
 }
 
@@ -806,12 +1982,79 @@ class CredentialAccessModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing credential access...");
-        System.out.println("  - Dumping memory for credentials");
-        System.out.println("  - Testing weak passwords");
-        System.out.println("  - Exploiting credential storage");
-        System.out.println("  - Testing authentication bypasses");
-        System.out.println("  Credential access completed.");
+        Logger.info("Executing credential access...");
+        Logger.debug("Dumping memory for credentials");
+        Logger.debug("Testing weak passwords");
+        Logger.debug("Exploiting credential storage");
+        Logger.debug("Testing authentication bypasses");
+        Logger.info("Credential access completed.");
+    }
+    
+    // Replays background logins and the three attack streams as merged Poisson processes against the
+    // directory, in time order, reporting every attempt to the listener.
+    public void simulate(IdentityDirectory directory, CredentialCampaign campaign, AuthListener listener)
+            throws NoSuchAlgorithmException {
+        Logger.info("Simulating credential attacks against {} accounts", directory.accounts);
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        long random = directory.seed ^ 0xA5A5A5A5L;
+        double[] next = new double[4];
+        double[] gaps = new double[4];
+        double[] rates = {campaign.backgroundRate, campaign.rates[0], campaign.rates[1], campaign.rates[2]};
+        for (int stream = 0; stream < 4; stream++) {
+            gaps[stream] = rates[stream] > 0 ? 1000.0 / rates[stream] : 0;
+            next[stream] = rates[stream] > 0 ? (stream == 0 ? 0 : campaign.starts[stream - 1]) : Double.MAX_VALUE;
+        }
+        long sprayCursor = 0;
+        int guesses = 0;
+        
+        while (true) {
+            int stream = 0;
+            for (int s = 1; s < 4; s++) {
+                if (next[s] < next[stream]) stream = s;
+            }
+            long time = (long) next[stream];
+            if (time >= campaign.duration) break;
+            random = SimulationState.mix(random);
+            next[stream] += -Math.log(((random >>> 11) + 1) * 0x1.0p-53) * gaps[stream];
+            if (stream > 0 && next[stream] >= campaign.ends[stream - 1]) next[stream] = Double.MAX_VALUE;
+            
+            long bits = SimulationState.mix(random);
+            int user;
+            int source;
+            String password;
+            switch (stream) {
+                case 0:
+                    user = (int) ((bits >>> 1) % directory.accounts);
+                    source = 0x0A000000 | (user & 0xFFFFFF);
+                    password = (bits & 31) == 0 ? directory.password(user) + "x" : directory.password(user);
+                    campaign.backgroundAttempts++;
+                    break;
+                case 1:
+                    user = (int) (sprayCursor % directory.accounts);
+                    source = CredentialCampaign.SPRAY_SOURCE;
+                    password = IdentityDirectory.COMMON_PASSWORDS[(int) (sprayCursor++ / directory.accounts
+                            % IdentityDirectory.COMMON_PASSWORDS.length)];
+                    break;
+                case 2:
+                    user = (int) ((bits >>> 1) % directory.accounts);
+                    source = CredentialCampaign.BOTNET_BASE + (int) ((bits >>> 40) % CredentialCampaign.BOTNET_SIZE);
+                    password = (bits & 63) == 0 ? directory.password(user) : Long.toString(bits >>> 20, 36);
+                    break;
+                default:
+                    user = campaign.bruteForceTarget;
+                    source = CredentialCampaign.BRUTE_FORCE_SOURCE;
+                    password = guesses < IdentityDirectory.COMMON_PASSWORDS.length
+                            ? IdentityDirectory.COMMON_PASSWORDS[guesses] : "guess" + guesses;
+                    guesses++;
+            }
+            boolean success = directory.authenticate(user, password, sha256);
+            if (stream > 0) {
+                campaign.attempts[stream - 1]++;
+                if (success) campaign.compromised[stream - 1]++;
+            }
+            listener.attempt(time, source, user, success);
+        }
+        Logger.info("Credential attack simulation completed.");
     }
 }
 
@@ -822,12 +2065,12 @@ class DiscoveryModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing discovery...");
-        System.out.println("  - Mapping network structure");
-        System.out.println("  - Identifying user accounts");
-        System.out.println("  - Discovering shared resources");
-        System.out.println("  - Mapping trust relationships");
-        System.out.println("  Discovery completed.");
+        Logger.info("Executing discovery...");
+        Logger.debug("Mapping network structure");
+        Logger.debug("Identifying user accounts");
+        Logger.debug("Discovering shared resources");
+        Logger.debug("Mapping trust relationships");
+        Logger.info("Discovery completed.");
     }
 }
 
@@ -838,12 +2081,12 @@ class LateralMovementModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing lateral movement...");
-        System.out.println("  - Testing remote execution");
-        System.out.println("  - Exploiting network services");
-        System.out.println("  - Testing administrative tools");
-        System.out.println("  - Exploiting trust relationships");
-        System.out.println("  Lateral movement completed.");
+        Logger.info("Executing lateral movement...");
+        Logger.debug("Testing remote execution");
+        Logger.debug("Exploiting network services");
+        Logger.debug("Testing administrative tools");
+        Logger.debug("Exploiting trust relationships");
+        Logger.info("Lateral movement completed.");
     }
 }
 
@@ -854,12 +2097,12 @@ class CollectionModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing collection...");
-        System.out.println("  - Collecting sensitive files");
-        System.out.println("  - Capturing keystrokes");
-        System.out.println("  - Recording screen activity");
-        System.out.println("  - Gathering system information");
-        System.out.println("  Collection completed.");
+        Logger.info("Executing collection...");
+        Logger.debug("Collecting sensitive files");
+        Logger.debug("Capturing keystrokes");
+        Logger.debug("Recording screen activity");
+        Logger.debug("Gathering system information");
+        Logger.info("Collection completed.");
     }
 }
 
@@ -870,12 +2113,12 @@ class ExfiltrationModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing exfiltration...");
-        System.out.println("  - Compressing collected data");
-        System.out.println("  - Encrypting sensitive information");
-        System.out.println("  - Testing exfiltration channels");
-        System.out.println("  - Simulating data transfer");
-        System.out.println("  Exfiltration completed.");
+        Logger.info("Executing exfiltration...");
+        Logger.debug("Compressing collected data");
+        Logger.debug("Encrypting sensitive information");
+        Logger.debug("Testing exfiltration channels");
+        Logger.debug("Simulating data transfer");
+        Logger.info("Exfiltration completed.");
     }
 }
 
@@ -886,76 +2129,202 @@ class CommandAndControlModule extends AttackModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing command and control...");
-        System.out.println("  - Establishing C2 channels");
-        System.out.println("  - Testing communication protocols");
-        System.out.println("  - Implementing encryption");
-        System.out.println("  - Testing obfuscation techniques");
-        System.out.println("  Command and control established.");
+        Logger.info("Executing command and control...");
+        Logger.debug("Establishing C2 channels");
+        Logger.debug("Testing communication protocols");
+        Logger.debug("Implementing encryption");
+        Logger.debug("Testing obfuscation techniques");
+        Logger.info("Command and control established.");
     }
 }
 
 class NetworkMonitoringModule extends DefenseModule {
+    private static final int[] SUSPICIOUS_PORTS = {23, 1337, 4444, 5555, 6667, 12345, 31337};
+    
+    private final boolean[] suspiciousPorts = new boolean[65536];
+    private HostBaselines flows;
+    private HostBaselines userFlows;
+    
     public NetworkMonitoringModule() {
         super("Network Monitoring", "Monitor network traffic for threats", 4);
+        for (int port : SUSPICIOUS_PORTS) {
+            suspiciousPorts[port] = true;
+        }
+    }
+    
+    @Override
+    public boolean inspect(LogRecord record) {
+        int port = record.destinationPort;
+        return port >= 0 && port < suspiciousPorts.length && suspiciousPorts[port];
+    }
+    
+    // Baselines grow on first use and are not synchronized: presize them before scoring from several
+    // threads, and score each host and each user from a single thread.
+    public long flowBaselines(int hosts, int users) {
+        flows = new HostBaselines(hosts);
+        userFlows = new HostBaselines(users);
+        return flows.memoryBytes() + userFlows.memoryBytes();
+    }
+    
+    // A flow is scored against both its host and its user; the lower score wins, so a user on an
+    // unfamiliar host or a new user on a busy host is not an alert on that alone.
+    public double scoreFlow(int host, int user, long bytes, int port) {
+        double value = Math.log1p(bytes);
+        flows = HostBaselines.covering(flows, host);
+        userFlows = HostBaselines.covering(userFlows, user);
+        return Math.min(flows.observe(host, value, port), userFlows.observe(user, value, port));
     }
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing network monitoring...");
-        System.out.println("  - Analyzing network packets");
-        System.out.println("  - Detecting anomalies");
-        System.out.println("  - Monitoring connections");
-        System.out.println("  - Analyzing protocols");
-        System.out.println("  Network monitoring active.");
+        Logger.info("Executing network monitoring...");
+        Logger.debug("Analyzing network packets");
+        Logger.debug("Detecting anomalies against {} host and {} user baselines",
+                flows == null ? 0 : flows.hosts, userFlows == null ? 0 : userFlows.hosts);
+        Logger.debug("Monitoring connections");
+        Logger.debug("Analyzing protocols");
+        Logger.info("Network monitoring active.");
     }
 }
 
 class EndpointProtectionModule extends DefenseModule {
+    private HostBaselines processes;
+    private HostBaselines userProcesses;
+    
     public EndpointProtectionModule() {
         super("Endpoint Protection", "Protect individual systems", 3);
     }
     
+    // Same threading rules as NetworkMonitoringModule.flowBaselines.
+    public long processBaselines(int hosts, int users) {
+        processes = new HostBaselines(hosts);
+        userProcesses = new HostBaselines(users);
+        return processes.memoryBytes() + userProcesses.memoryBytes();
+    }
+    
+    public double scoreProcess(int host, int user, long cpuMillis, int image) {
+        double value = Math.log1p(cpuMillis);
+        processes = HostBaselines.covering(processes, host);
+        userProcesses = HostBaselines.covering(userProcesses, user);
+        return Math.min(processes.observe(host, value, image), userProcesses.observe(user, value, image));
+    }
+    
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing endpoint protection...");
-        System.out.println("  - Scanning for malware");
-        System.out.println("  - Monitoring processes");
-        System.out.println("  - Protecting critical files");
-        System.out.println("  - Implementing access controls");
-        System.out.println("  Endpoint protection active.");
+        Logger.info("Executing endpoint protection...");
+        Logger.debug("Scanning for malware");
+        Logger.debug("Monitoring processes against {} host and {} user baselines",
+                processes == null ? 0 : processes.hosts, userProcesses == null ? 0 : userProcesses.hosts);
+        Logger.debug("Protecting critical files");
+        Logger.debug("Implementing access controls");
+        Logger.info("Endpoint protection active.");
     }
 }
 
 class LogAnalysisModule extends DefenseModule {
+    private static final byte[][] SUSPICIOUS_PATTERNS = {
+        ascii("failed"), ascii("failure"), ascii("denied"), ascii("invalid user"), ascii("unauthorized")
+    };
+    
+    private static byte[] ascii(String text) {
+        return text.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+    
     public LogAnalysisModule() {
         super("Log Analysis", "Analyze system logs for threats", 3);
     }
     
+    @Override
+    public boolean inspect(LogRecord record) {
+        for (byte[] pattern : SUSPICIOUS_PATTERNS) {
+            if (record.messageContains(pattern)) return true;
+        }
+        return false;
+    }
+    
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing log analysis...");
-        System.out.println("  - Parsing system logs");
-        System.out.println("  - Detecting suspicious patterns");
-        System.out.println("  - Correlating events");
-        System.out.println("  - Generating alerts");
-        System.out.println("  Log analysis active.");
+        Logger.info("Executing log analysis...");
+        Logger.debug("Parsing system logs");
+        Logger.debug("Detecting suspicious patterns");
+        Logger.debug("Correlating events");
+        Logger.debug("Generating alerts");
+        Logger.info("Log analysis active.");
     }
 }
 
 class ThreatIntelligenceModule extends DefenseModule {
+    private static final String[] BUILT_IN_INDICATORS = {
+        "192.0.2.146", "198.51.100.23", "198.51.100.77", "203.0.113.66", "203.0.113.199"
+    };
+    
+    private int[] indicators = new int[16];
+    private int indicatorCount;
+    
     public ThreatIntelligenceModule() {
         super("Threat Intelligence", "Gather and analyze threat information", 4);
+        for (String indicator : BUILT_IN_INDICATORS) {
+            addIndicator(LogRecord.parseIpv4(indicator));
+        }
+    }
+    
+    public int getIndicatorCount() {
+        return indicatorCount;
+    }
+    
+    public int loadIndicators(Path path) throws IOException {
+        int loaded = 0;
+        for (String line : Files.readAllLines(path)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int address = LogRecord.parseIpv4(line);
+            if (address == 0) throw new IOException("Invalid IPv4 indicator: " + line);
+            if (addIndicator(address)) loaded++;
+        }
+        return loaded;
+    }
+    
+    @Override
+    public boolean inspect(LogRecord record) {
+        return isIndicator(record.sourceIp) || isIndicator(record.destinationIp);
+    }
+    
+    // Open-addressing set of IPv4 addresses; 0 marks an empty slot since 0.0.0.0 is never an indicator.
+    private boolean isIndicator(int address) {
+        if (address == 0) return false;
+        int mask = indicators.length - 1;
+        for (int slot = (int) SimulationState.mix(address) & mask; ; slot = (slot + 1) & mask) {
+            if (indicators[slot] == address) return true;
+            if (indicators[slot] == 0) return false;
+        }
+    }
+    
+    private boolean addIndicator(int address) {
+        if (isIndicator(address)) return false;
+        if ((indicatorCount + 1) * 2 > indicators.length) {
+            int[] previous = indicators;
+            indicators = new int[previous.length * 2];
+            indicatorCount = 0;
+            for (int value : previous) {
+                if (value != 0) addIndicator(value);
+            }
+        }
+        int mask = indicators.length - 1;
+        int slot = (int) SimulationState.mix(address) & mask;
+        while (indicators[slot] != 0) slot = (slot + 1) & mask;
+        indicators[slot] = address;
+        indicatorCount++;
+        return true;
     }
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing threat intelligence...");
-        System.out.println("  - Collecting threat feeds");
-        System.out.println("  - Analyzing indicators");
-        System.out.println("  - Updating signatures");
-        System.out.println("  - Sharing intelligence");
-        System.out.println("  Threat intelligence active.");
+        Logger.info("Executing threat intelligence...");
+        Logger.debug("Collecting threat feeds");
+        Logger.debug("Analyzing indicators");
+        Logger.debug("Updating signatures");
+        Logger.debug("Sharing intelligence");
+        Logger.info("Threat intelligence active.");
     }
 }
 
@@ -966,12 +2335,20 @@ class IncidentResponseModule extends DefenseModule {
     
     @Override
     public void execute(Config config) {
-        System.out.println("  Executing incident response...");
-        System.out.println("  - Investigating alerts");
-        System.out.println("  - Containing threats");
-        System.out.println("  - Eradicating malware");
-        System.out.println("  - Restoring systems");
-        System.out.println("  Incident response ready.");
+        Logger.info("Executing incident response...");
+        Logger.debug("Investigating alerts");
+        Logger.debug("Containing threats");
+        Logger.debug("Eradicating malware");
+        Logger.debug("Restoring systems");
+        Logger.info("Incident response ready.");
+    }
+    
+    public IncidentReport respond(TelemetryStore telemetry, Config config, ExecutorService executor)
+            throws InterruptedException, ExecutionException {
+        Logger.info("Responding to {} telemetry events with {} analysts", telemetry.size(), config.getAnalystCount());
+        IncidentReport report = new IncidentResponseEngine(telemetry, config.getAnalystCount(), config.getRandomSeed()).run(executor);
+        Logger.info("Incident response completed: {} incidents resolved.", report.resolved);
+        return report;
     }
 }
 
@@ -982,6 +2359,10 @@ class Config {
     private boolean stealthMode;
     private String loggingLevel;
     private int timeout;
+    private int simulationHosts;
+    private long randomSeed;
+    private int checkpointInterval;
+    private int analystCount;
     
     public Config() {
         this.targetHost = "localhost";
@@ -990,6 +2371,25 @@ class Config {
         this.stealthMode = false;
         this.loggingLevel = "INFO";
         this.timeout = 30000;
+        this.simulationHosts = 1000;
+        this.randomSeed = 42L;
+        this.checkpointInterval = 60;
+        this.analystCount = 20;
+    }
+    
+    public Config copy() {
+        Config copy = new Config();
+        copy.targetHost = targetHost;
+        copy.targetPort = targetPort;
+        copy.attackIntensity = attackIntensity;
+        copy.stealthMode = stealthMode;
+        copy.loggingLevel = loggingLevel;
+        copy.timeout = timeout;
+        copy.simulationHosts = simulationHosts;
+        copy.randomSeed = randomSeed;
+        copy.checkpointInterval = checkpointInterval;
+        copy.analystCount = analystCount;
+        return copy;
     }
     
     public String getTargetHost() { return targetHost; }
@@ -1010,6 +2410,18 @@ class Config {
     public int getTimeout() { return timeout; }
     public void setTimeout(int timeout) { this.timeout = timeout; }
     
+    public int getSimulationHosts() { return simulationHosts; }
+    public void setSimulationHosts(int simulationHosts) { this.simulationHosts = simulationHosts; }
+    
+    public long getRandomSeed() { return randomSeed; }
+    public void setRandomSeed(long randomSeed) { this.randomSeed = randomSeed; }
+    
+    public int getCheckpointInterval() { return checkpointInterval; }
+    public void setCheckpointInterval(int checkpointInterval) { this.checkpointInterval = checkpointInterval; }
+    
+    public int getAnalystCount() { return analystCount; }
+    public void setAnalystCount(int analystCount) { this.analystCount = analystCount; }
+    
     public void loadFromFile(String filePath) throws Exception {
         // Implementation for loading configuration from file
     }
@@ -1018,3 +2430,6010 @@ class Config {
         // Implementation for saving configuration to file
     }
 }
+
+class SimulationState {
+    static final byte CLEAN = 0;
+    static final byte COMPROMISED = 1;
+    static final byte CONTAINED = 2;
+    
+    final int hostCount;
+    final int shard;
+    final int shards;
+    final long seed;
+    final int attackIntensity;
+    final boolean stealthMode;
+    final long endTime;
+    
+    long clock;
+    long eventsProcessed;
+    long lastCheckpointTime;
+    int checkpointSequence;
+    int checkpointBase;
+    
+    final byte[] hostStage;
+    final byte[] hostStatus;
+    final long[] hostRandom;
+    final long[] dirtyHosts;
+    final long[] attempts;
+    final long[] successes;
+    final long[] detections;
+    final EventQueue queue;
+    
+    SimulationState(int hostCount, long seed, int attackIntensity, boolean stealthMode, long endTime,
+                    int attackCount, int defenseCount) {
+        this(hostCount, 0, 1, seed, attackIntensity, stealthMode, endTime, attackCount, defenseCount);
+    }
+    
+    // A shard owns the hosts whose id modulo shards equals its index; per-host arrays hold only those,
+    // at local index host / shards. With a single shard local and global ids coincide.
+    SimulationState(int hostCount, int shard, int shards, long seed, int attackIntensity, boolean stealthMode,
+                    long endTime, int attackCount, int defenseCount) {
+        int localHosts = (hostCount - shard + shards - 1) / shards;
+        this.hostCount = hostCount;
+        this.shard = shard;
+        this.shards = shards;
+        this.seed = seed;
+        this.attackIntensity = attackIntensity;
+        this.stealthMode = stealthMode;
+        this.endTime = endTime;
+        this.hostStage = new byte[localHosts];
+        this.hostStatus = new byte[localHosts];
+        this.hostRandom = new long[localHosts];
+        this.dirtyHosts = new long[(localHosts + 63) >>> 6];
+        this.attempts = new long[attackCount];
+        this.successes = new long[attackCount];
+        this.detections = new long[defenseCount];
+        this.queue = new EventQueue(Math.max(16, localHosts / 8));
+    }
+    
+    static SimulationState create(Config config, int attackCount, int defenseCount, long endTime) {
+        return create(config, attackCount, defenseCount, endTime, 0, 1);
+    }
+    
+    static SimulationState create(Config config, int attackCount, int defenseCount, long endTime, int shard, int shards) {
+        SimulationState state = new SimulationState(config.getSimulationHosts(), shard, shards, config.getRandomSeed(),
+                config.getAttackIntensity(), config.isStealthMode(), endTime, attackCount, defenseCount);
+        for (int local = 0; local < state.hostRandom.length; local++) {
+            state.hostRandom[local] = mix(state.seed + state.globalHost(local) * 0x9E3779B97F4A7C15L);
+        }
+        return state;
+    }
+    
+    SimulationState emptyCopy() {
+        return new SimulationState(hostCount, shard, shards, seed, attackIntensity, stealthMode, endTime,
+                attempts.length, detections.length);
+    }
+    
+    boolean owns(int host) {
+        return host % shards == shard;
+    }
+    
+    int localHost(int host) {
+        return host / shards;
+    }
+    
+    int globalHost(int local) {
+        return local * shards + shard;
+    }
+    
+    // Per-host SplitMix64 streams keep outcomes independent of event interleaving across hosts.
+    long nextLong(int host) {
+        return mix(hostRandom[host] += 0x9E3779B97F4A7C15L);
+    }
+    
+    double nextDouble(int host) {
+        return (nextLong(host) >>> 11) * 0x1.0p-53;
+    }
+    
+    void markDirty(int host) {
+        dirtyHosts[host >>> 6] |= 1L << host;
+    }
+    
+    boolean isDirty(int host) {
+        return (dirtyHosts[host >>> 6] & (1L << host)) != 0;
+    }
+    
+    int countHosts(byte status) {
+        int count = 0;
+        for (byte value : hostStatus) {
+            if (value == status) count++;
+        }
+        return count;
+    }
+    
+    void copyTo(SimulationState target) {
+        target.clock = clock;
+        target.eventsProcessed = eventsProcessed;
+        target.lastCheckpointTime = lastCheckpointTime;
+        target.checkpointSequence = checkpointSequence;
+        target.checkpointBase = checkpointBase;
+        System.arraycopy(hostStage, 0, target.hostStage, 0, hostStage.length);
+        System.arraycopy(hostStatus, 0, target.hostStatus, 0, hostStatus.length);
+        System.arraycopy(hostRandom, 0, target.hostRandom, 0, hostRandom.length);
+        System.arraycopy(dirtyHosts, 0, target.dirtyHosts, 0, dirtyHosts.length);
+        System.arraycopy(attempts, 0, target.attempts, 0, attempts.length);
+        System.arraycopy(successes, 0, target.successes, 0, successes.length);
+        System.arraycopy(detections, 0, target.detections, 0, detections.length);
+        queue.copyTo(target.queue);
+    }
+    
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
+
+class EventQueue {
+    private long[] times;
+    private int[] hosts;
+    private int[] payloads;
+    private int size;
+    
+    private long polledTime;
+    private int polledHost;
+    private int polledPayload;
+    
+    EventQueue(int capacity) {
+        this.times = new long[capacity];
+        this.hosts = new int[capacity];
+        this.payloads = new int[capacity];
+    }
+    
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public long peekTime() { return times[0]; }
+    
+    public long polledTime() { return polledTime; }
+    public int polledHost() { return polledHost; }
+    public int polledPayload() { return polledPayload; }
+    
+    public long timeAt(int index) { return times[index]; }
+    public int hostAt(int index) { return hosts[index]; }
+    public int payloadAt(int index) { return payloads[index]; }
+    
+    public void add(long time, int host, int payload) {
+        int index = append(time, host, payload);
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!less(index, parent)) break;
+            swap(index, parent);
+            index = parent;
+        }
+    }
+    
+    public void poll() {
+        polledTime = times[0];
+        polledHost = hosts[0];
+        polledPayload = payloads[0];
+        size--;
+        if (size == 0) return;
+        times[0] = times[size];
+        hosts[0] = hosts[size];
+        payloads[0] = payloads[size];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) break;
+            if (child + 1 < size && less(child + 1, child)) child++;
+            if (!less(child, index)) break;
+            swap(index, child);
+            index = child;
+        }
+    }
+    
+    // Appends without sifting; used when restoring an array that is already in heap order.
+    public int append(long time, int host, int payload) {
+        if (size == times.length) grow(size * 2);
+        times[size] = time;
+        hosts[size] = host;
+        payloads[size] = payload;
+        return size++;
+    }
+    
+    public void clear() {
+        size = 0;
+    }
+    
+    public void copyTo(EventQueue target) {
+        if (target.times.length < size) target.grow(times.length);
+        System.arraycopy(times, 0, target.times, 0, size);
+        System.arraycopy(hosts, 0, target.hosts, 0, size);
+        System.arraycopy(payloads, 0, target.payloads, 0, size);
+        target.size = size;
+    }
+    
+    // Total order on (time, host, payload) so equal-time events replay identically after a restore.
+    private boolean less(int a, int b) {
+        if (times[a] != times[b]) return times[a] < times[b];
+        if (hosts[a] != hosts[b]) return hosts[a] < hosts[b];
+        return payloads[a] < payloads[b];
+    }
+    
+    private void swap(int a, int b) {
+        long time = times[a]; times[a] = times[b]; times[b] = time;
+        int host = hosts[a]; hosts[a] = hosts[b]; hosts[b] = host;
+        int payload = payloads[a]; payloads[a] = payloads[b]; payloads[b] = payload;
+    }
+    
+    private void grow(int capacity) {
+        times = Arrays.copyOf(times, capacity);
+        hosts = Arrays.copyOf(hosts, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+    }
+}
+
+class SimulationEngine {
+    static final long MINUTE = 60_000L;
+    static final long HOUR = 60 * MINUTE;
+    static final int STEP = 0;
+    static final int INFECTION = 1;
+    
+    private final List<AttackModule> attackModules;
+    private final List<DefenseModule> defenseModules;
+    private final SimulationState state;
+    private final double[] successChance;
+    private final double[][] detectionChance;
+    private final long[] meanDelay;
+    private final int persistenceStage;
+    private final int lateralStage;
+    private CheckpointWriter checkpointWriter;
+    private long checkpointInterval;
+    private RunObserver recorder;
+    private TelemetrySink telemetry;
+    private EventQueue outbox;
+    private LiveMetrics.Campaign metrics;
+    private int untilSample = LiveMetrics.SAMPLE_INTERVAL;
+    
+    public SimulationEngine(Config config, List<AttackModule> attackModules, List<DefenseModule> defenseModules,
+                            SimulationState state) {
+        this.attackModules = attackModules;
+        this.defenseModules = defenseModules;
+        this.state = state;
+        this.successChance = new double[attackModules.size()];
+        this.detectionChance = new double[attackModules.size()][defenseModules.size()];
+        this.meanDelay = new long[attackModules.size()];
+        
+        int persistence = 0;
+        int lateral = -1;
+        for (int stage = 0; stage < attackModules.size(); stage++) {
+            AttackModule module = attackModules.get(stage);
+            successChance[stage] = module.successProbability(config);
+            meanDelay[stage] = module.meanDelay(config);
+            for (int d = 0; d < defenseModules.size(); d++) {
+                detectionChance[stage][d] = defenseModules.get(d).detectionProbability(config, module);
+            }
+            if (module instanceof PersistenceModule) persistence = stage;
+            if (module instanceof LateralMovementModule) lateral = stage;
+        }
+        this.persistenceStage = persistence;
+        this.lateralStage = lateral;
+    }
+    
+    public SimulationState getState() {
+        return state;
+    }
+    
+    public void enableCheckpoints(CheckpointWriter writer, long interval) {
+        this.checkpointWriter = writer;
+        this.checkpointInterval = interval;
+    }
+    
+    public void enableRecording(RunObserver recorder) {
+        this.recorder = recorder;
+    }
+    
+    public void enableTelemetry(TelemetrySink telemetry) {
+        this.telemetry = telemetry;
+    }
+    
+    public void enableMetrics(LiveMetrics.Campaign metrics) {
+        this.metrics = metrics;
+    }
+    
+    // Infections of hosts owned by other shards are appended to the outbox instead of the local queue.
+    public void enableSharding(EventQueue outbox) {
+        this.outbox = outbox;
+    }
+    
+    // No event schedules another host sooner than the shortest lateral movement delay.
+    public long lookahead() {
+        return Math.max(1, meanDelay[persistenceStage] / 4);
+    }
+    
+    public void seedCampaign() throws IOException {
+        int entryPoints = Math.max(1, state.hostCount / 1000);
+        for (int i = 0; i < entryPoints; i++) {
+            int host = (int) ((long) i * state.hostCount / entryPoints);
+            if (!state.owns(host)) continue;
+            int local = state.localHost(host);
+            state.markDirty(local);
+            schedule(state.clock + delay(local, 0), local, 0);
+        }
+    }
+    
+    public void deliver(long time, int host, int payload) {
+        state.queue.add(time, state.localHost(host), payload);
+    }
+    
+    public long nextEventTime() {
+        EventQueue queue = state.queue;
+        return queue.isEmpty() || queue.peekTime() > state.endTime ? Long.MAX_VALUE : queue.peekTime();
+    }
+    
+    // Processes every event strictly before the horizon, as granted by the shard coordinator.
+    public void runWindow(long horizon) throws IOException {
+        EventQueue queue = state.queue;
+        LiveMetrics.Campaign metrics = this.metrics;
+        int countdown = untilSample;
+        while (!queue.isEmpty() && queue.peekTime() < horizon && queue.peekTime() <= state.endTime) {
+            queue.poll();
+            if (metrics != null && --countdown == 0) {
+                countdown = LiveMetrics.SAMPLE_INTERVAL;
+                timed(queue, metrics);
+            } else {
+                process(queue.polledTime(), queue.polledHost(), queue.polledPayload());
+            }
+        }
+        untilSample = countdown;
+    }
+    
+    // The metrics handle and sampling countdown live in locals so an untimed event costs one
+    // register compare over the loop it had before live metrics existed.
+    public void run() throws IOException {
+        EventQueue queue = state.queue;
+        LiveMetrics.Campaign metrics = this.metrics;
+        int countdown = untilSample;
+        while (!queue.isEmpty() && queue.peekTime() <= state.endTime) {
+            if (checkpointWriter != null) {
+                long due = state.lastCheckpointTime + checkpointInterval;
+                if (queue.peekTime() >= due) {
+                    state.lastCheckpointTime = due + (queue.peekTime() - due) / checkpointInterval * checkpointInterval;
+                    checkpointWriter.checkpoint(state);
+                }
+            }
+            queue.poll();
+            if (metrics != null && --countdown == 0) {
+                countdown = LiveMetrics.SAMPLE_INTERVAL;
+                timed(queue, metrics);
+            } else {
+                process(queue.polledTime(), queue.polledHost(), queue.polledPayload());
+            }
+        }
+        untilSample = countdown;
+    }
+    
+    private void timed(EventQueue queue, LiveMetrics.Campaign metrics) throws IOException {
+        int stage = queue.polledPayload() & 0xFF;
+        long started = System.nanoTime();
+        process(queue.polledTime(), queue.polledHost(), queue.polledPayload());
+        metrics.sample(stage, System.nanoTime() - started);
+    }
+    
+    private void process(long time, int local, int payload) throws IOException {
+        state.clock = time;
+        state.eventsProcessed++;
+        int host = state.globalHost(local);
+        int stage = payload & 0xFF;
+        byte status = state.hostStatus[local];
+        if (status == SimulationState.CONTAINED
+                || ((payload >>> 8) == INFECTION ? status != SimulationState.CLEAN : state.hostStage[local] != stage)) {
+            return;
+        }
+        if ((payload >>> 8) == INFECTION) {
+            state.hostStage[local] = (byte) stage;
+        }
+        
+        state.markDirty(local);
+        state.attempts[stage]++;
+        if (state.nextDouble(local) >= successChance[stage]) {
+            long retry = time + delay(local, stage);
+            if (recorder != null) recorder.attempt(time, host, stage, false, 0L);
+            if (telemetry != null) telemetry.record(time, host, TelemetrySink.ATTEMPT, stage, 0, -1);
+            state.queue.add(retry, local, stage);
+            return;
+        }
+        
+        if (telemetry != null) telemetry.record(time, host, TelemetrySink.SUCCESS, stage, 0, -1);
+        state.successes[stage]++;
+        state.hostStatus[local] = SimulationState.COMPROMISED;
+        long detectedBy = 0L;
+        double[] chances = detectionChance[stage];
+        for (int d = 0; d < chances.length; d++) {
+            if (state.nextDouble(local) < chances[d]) {
+                if (telemetry != null) telemetry.record(time, host, TelemetrySink.DETECTION, stage, d, -1);
+                state.detections[d]++;
+                detectedBy |= 1L << d;
+            }
+        }
+        if (detectedBy != 0L) {
+            state.hostStatus[local] = SimulationState.CONTAINED;
+            if (recorder != null) recorder.attempt(time, host, stage, true, detectedBy);
+            return;
+        }
+        
+        if (stage == lateralStage) {
+            int target = (int) Long.remainderUnsigned(state.nextLong(local), state.hostCount);
+            if (target != host) {
+                if (telemetry != null) telemetry.record(time, host, TelemetrySink.LATERAL, stage, 0, target);
+                long arrival = time + delay(local, persistenceStage);
+                if (state.owns(target)) {
+                    schedule(arrival, state.localHost(target), persistenceStage | (INFECTION << 8));
+                } else {
+                    outbox.append(arrival, target, persistenceStage | (INFECTION << 8));
+                }
+            }
+        }
+        int next = Math.min(stage + 1, attackModules.size() - 1);
+        long nextTime = time + delay(local, next);
+        if (recorder != null) recorder.attempt(time, host, stage, true, 0L);
+        state.hostStage[local] = (byte) next;
+        state.queue.add(nextTime, local, next);
+    }
+    
+    private void schedule(long time, int local, int payload) throws IOException {
+        state.queue.add(time, local, payload);
+    }
+    
+    // StrictMath keeps sampled delays identical across JVMs so resumed runs match bit-for-bit.
+    private long delay(int local, int stage) {
+        long mean = meanDelay[stage];
+        long minimum = mean / 4;
+        return minimum + (long) (-StrictMath.log(1.0 - state.nextDouble(local)) * (mean - minimum));
+    }
+    
+    static String formatTime(long time) {
+        return String.format("day %d %02d:%02d", time / (24 * HOUR), time / HOUR % 24, time / MINUTE % 60);
+    }
+}
+
+class CheckpointWriter {
+    private static final int FULL_EVERY = 8;
+    
+    private final Path directory;
+    private final ExecutorService executor;
+    private final SimulationState[] buffers = new SimulationState[2];
+    private final Future<?>[] pending = new Future<?>[2];
+    private int nextBuffer;
+    private int written;
+    
+    public CheckpointWriter(Path directory, ExecutorService executor, SimulationState state) throws IOException {
+        this.directory = directory;
+        this.executor = executor;
+        Files.createDirectories(directory);
+        buffers[0] = state.emptyCopy();
+        buffers[1] = state.emptyCopy();
+    }
+    
+    public int getWritten() {
+        return written;
+    }
+    
+    // Copies live state into a spare buffer and hands it to the executor; the simulation only
+    // waits when both buffers are still being written.
+    public void checkpoint(SimulationState state) throws IOException {
+        int slot = nextBuffer;
+        nextBuffer ^= 1;
+        await(slot);
+        
+        state.checkpointSequence++;
+        boolean full = state.checkpointBase == 0 || state.checkpointSequence - state.checkpointBase >= FULL_EVERY;
+        if (full) state.checkpointBase = state.checkpointSequence;
+        
+        SimulationState snapshot = buffers[slot];
+        state.copyTo(snapshot);
+        Arrays.fill(state.dirtyHosts, 0L);
+        
+        Path path = CheckpointFile.pathFor(directory, snapshot.checkpointSequence);
+        pending[slot] = executor.submit(() -> {
+            CheckpointFile.write(path, snapshot, full);
+            return null;
+        });
+        written++;
+    }
+    
+    public void close() throws IOException {
+        await(0);
+        await(1);
+    }
+    
+    private void await(int slot) throws IOException {
+        Future<?> future = pending[slot];
+        if (future == null) return;
+        pending[slot] = null;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing checkpoint");
+        } catch (ExecutionException e) {
+            throw new IOException("Checkpoint write failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
+
+class CheckpointFile {
+    private static final long MAGIC = 0x58415054434B5054L;
+    private static final int VERSION = 1;
+    private static final byte FULL = 0;
+    private static final byte DELTA = 1;
+    
+    static Path pathFor(Path directory, int sequence) {
+        return directory.resolve(String.format("checkpoint-%06d.ckpt", sequence));
+    }
+    
+    static List<Integer> list(Path directory) throws IOException {
+        List<Integer> sequences = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return sequences;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "checkpoint-*.ckpt")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                sequences.add(Integer.parseInt(name.substring(11, name.length() - 5)));
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+    
+    static void write(Path path, SimulationState snapshot, boolean full) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)), new Deflater(Deflater.BEST_SPEED), 65536))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(full ? FULL : DELTA);
+            out.writeInt(snapshot.checkpointSequence);
+            out.writeInt(snapshot.checkpointBase);
+            out.writeInt(snapshot.hostCount);
+            out.writeLong(snapshot.seed);
+            out.writeByte(snapshot.attackIntensity);
+            out.writeBoolean(snapshot.stealthMode);
+            out.writeLong(snapshot.endTime);
+            out.writeInt(snapshot.attempts.length);
+            out.writeInt(snapshot.detections.length);
+            out.writeLong(snapshot.clock);
+            out.writeLong(snapshot.eventsProcessed);
+            out.writeLong(snapshot.lastCheckpointTime);
+            
+            for (int i = 0; i < snapshot.attempts.length; i++) {
+                BinaryCodec.writeVarLong(out, snapshot.attempts[i]);
+                BinaryCodec.writeVarLong(out, snapshot.successes[i]);
+            }
+            for (long detections : snapshot.detections) {
+                BinaryCodec.writeVarLong(out, detections);
+            }
+            
+            if (full) {
+                out.write(snapshot.hostStage);
+                out.write(snapshot.hostStatus);
+                for (long random : snapshot.hostRandom) {
+                    out.writeLong(random);
+                }
+            } else {
+                int dirty = 0;
+                for (long word : snapshot.dirtyHosts) {
+                    dirty += Long.bitCount(word);
+                }
+                BinaryCodec.writeVarLong(out, dirty);
+                int previous = 0;
+                for (int host = 0; host < snapshot.hostCount; host++) {
+                    if (!snapshot.isDirty(host)) continue;
+                    BinaryCodec.writeVarLong(out, host - previous);
+                    out.writeByte(snapshot.hostStage[host]);
+                    out.writeByte(snapshot.hostStatus[host]);
+                    out.writeLong(snapshot.hostRandom[host]);
+                    previous = host;
+                }
+            }
+            
+            EventQueue queue = snapshot.queue;
+            BinaryCodec.writeVarLong(out, queue.size());
+            for (int i = 0; i < queue.size(); i++) {
+                BinaryCodec.writeVarLong(out, queue.timeAt(i) - snapshot.clock);
+                BinaryCodec.writeVarLong(out, queue.hostAt(i));
+                BinaryCodec.writeVarLong(out, queue.payloadAt(i));
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    static long readClock(Path path) throws IOException {
+        try (DataInputStream in = open(path)) {
+            readHeader(in, path);
+            in.readInt();
+            in.readInt();
+            in.readInt();
+            in.readLong();
+            in.readByte();
+            in.readBoolean();
+            in.readLong();
+            in.readInt();
+            in.readInt();
+            return in.readLong();
+        }
+    }
+    
+    // Rebuilds state from the nearest full checkpoint followed by every delta up to the target.
+    static SimulationState restore(Path directory, int sequence) throws IOException {
+        int base;
+        try (DataInputStream in = open(pathFor(directory, sequence))) {
+            readHeader(in, pathFor(directory, sequence));
+            in.readInt();
+            base = in.readInt();
+        }
+        
+        SimulationState state = read(pathFor(directory, base), null);
+        for (int next = base + 1; next <= sequence; next++) {
+            read(pathFor(directory, next), state);
+        }
+        Arrays.fill(state.dirtyHosts, 0L);
+        return state;
+    }
+    
+    private static SimulationState read(Path path, SimulationState existing) throws IOException {
+        try (DataInputStream in = open(path)) {
+            byte kind = readHeader(in, path);
+            int sequence = in.readInt();
+            int base = in.readInt();
+            int hostCount = in.readInt();
+            long seed = in.readLong();
+            int intensity = in.readByte();
+            boolean stealth = in.readBoolean();
+            long endTime = in.readLong();
+            int attackCount = in.readInt();
+            int defenseCount = in.readInt();
+            
+            if (existing == null && kind == DELTA) {
+                throw new IOException("Checkpoint " + path.getFileName() + " is a delta without its base");
+            }
+            SimulationState state = existing != null ? existing
+                    : new SimulationState(hostCount, seed, intensity, stealth, endTime, attackCount, defenseCount);
+            if (state.hostCount != hostCount || state.seed != seed) {
+                throw new IOException("Checkpoint " + path.getFileName() + " belongs to a different run");
+            }
+            state.checkpointSequence = sequence;
+            state.checkpointBase = base;
+            state.clock = in.readLong();
+            state.eventsProcessed = in.readLong();
+            state.lastCheckpointTime = in.readLong();
+            
+            for (int i = 0; i < attackCount; i++) {
+                state.attempts[i] = BinaryCodec.readVarLong(in);
+                state.successes[i] = BinaryCodec.readVarLong(in);
+            }
+            for (int i = 0; i < defenseCount; i++) {
+                state.detections[i] = BinaryCodec.readVarLong(in);
+            }
+            
+            if (kind == FULL) {
+                in.readFully(state.hostStage);
+                in.readFully(state.hostStatus);
+                for (int host = 0; host < hostCount; host++) {
+                    state.hostRandom[host] = in.readLong();
+                }
+            } else {
+                long dirty = BinaryCodec.readVarLong(in);
+                int host = 0;
+                for (long i = 0; i < dirty; i++) {
+                    host += (int) BinaryCodec.readVarLong(in);
+                    state.hostStage[host] = in.readByte();
+                    state.hostStatus[host] = in.readByte();
+                    state.hostRandom[host] = in.readLong();
+                }
+            }
+            
+            EventQueue queue = state.queue;
+            queue.clear();
+            long size = BinaryCodec.readVarLong(in);
+            for (long i = 0; i < size; i++) {
+                long time = state.clock + BinaryCodec.readVarLong(in);
+                queue.append(time, (int) BinaryCodec.readVarLong(in), (int) BinaryCodec.readVarLong(in));
+            }
+            return state;
+        }
+    }
+    
+    private static DataInputStream open(Path path) throws IOException {
+        return new DataInputStream(new InflaterInputStream(new BufferedInputStream(Files.newInputStream(path)), new Inflater(), 65536));
+    }
+    
+    private static byte readHeader(DataInputStream in, Path path) throws IOException {
+        if (in.readLong() != MAGIC) {
+            throw new IOException("Not a checkpoint file: " + path.getFileName());
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + " in " + path.getFileName());
+        }
+        return in.readByte();
+    }
+}
+
+class BinaryCodec {
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+    
+    static long getVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        putVarLong(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+    
+    static String getString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[(int) getVarLong(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+    
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
+
+// Receives every attempt the engine processes, in order.
+interface RunObserver {
+    void attempt(long time, int host, int stage, boolean success, long detectedBy) throws IOException;
+}
+
+// A run is a pure function of its seed, configuration and module list, so those are recorded in the
+// header and every outcome is re-derived on replay from the same per-host RNG streams. The simulation
+// thread only folds each attempt into a running digest; once per simulated hour the digest and event
+// count are appended as a checkpoint, so a replay that drifts (different code, different modules)
+// fails at the hour it diverged instead of silently producing another run.
+class RunRecorder implements RunObserver, Closeable {
+    static final long MAGIC = 0x5841505452504C59L;
+    static final int VERSION = 2;
+    static final byte END = 0;
+    static final byte MARK = 1;
+    static final int MAX_RECORD = 32;
+    
+    private final FileChannel channel;
+    private final SimulationState state;
+    private final byte[] block = new byte[1 << 16];
+    private int position;
+    private long digest;
+    private long nextMark;
+    private long lastMarkTime;
+    private long lastMarkEvents;
+    private long records;
+    
+    public RunRecorder(Path path, Config config, SimulationState state, List<AttackModule> attackModules,
+                       List<DefenseModule> defenseModules) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.state = state;
+        this.lastMarkTime = state.clock;
+        this.lastMarkEvents = state.eventsProcessed;
+        this.nextMark = nextMark(state.clock);
+        
+        ByteBuffer header = ByteBuffer.wrap(block);
+        header.putLong(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(state.seed);
+        header.putInt(state.hostCount);
+        header.putLong(state.clock);
+        header.putLong(state.endTime);
+        BinaryCodec.putString(header, config.getTargetHost());
+        header.putInt(config.getTargetPort());
+        header.putInt(state.attackIntensity);
+        header.put((byte) (state.stealthMode ? 1 : 0));
+        BinaryCodec.putString(header, config.getLoggingLevel());
+        header.putInt(config.getTimeout());
+        header.putInt(attackModules.size());
+        for (AttackModule module : attackModules) {
+            BinaryCodec.putString(header, module.getName());
+        }
+        header.putInt(defenseModules.size());
+        for (DefenseModule module : defenseModules) {
+            BinaryCodec.putString(header, module.getName());
+        }
+        position = header.position();
+    }
+    
+    public long getRecords() {
+        return records;
+    }
+    
+    @Override
+    public void attempt(long time, int host, int stage, boolean success, long detectedBy) throws IOException {
+        if (time >= nextMark) {
+            mark(time);
+            nextMark = nextMark(time);
+        }
+        digest = fold(digest, time, host, stage, success, detectedBy);
+    }
+    
+    static long fold(long digest, long time, int host, int stage, boolean success, long detectedBy) {
+        long value = time ^ (long) host << 24 ^ (long) stage << 56 ^ (success ? Long.MIN_VALUE : 0L) ^ Long.rotateLeft(detectedBy, 40);
+        return (Long.rotateLeft(digest, 23) ^ value) * 0x9E3779B97F4A7C15L;
+    }
+    
+    static long nextMark(long time) {
+        return (time / SimulationEngine.HOUR + 1) * SimulationEngine.HOUR;
+    }
+    
+    // Checkpoint: time and event count as deltas from the previous one, then the raw digest.
+    private void mark(long time) throws IOException {
+        if (position > block.length - MAX_RECORD) flush();
+        records++;
+        byte[] block = this.block;
+        int position = this.position;
+        block[position++] = MARK;
+        position = putVarLong(block, position, time - lastMarkTime);
+        position = putVarLong(block, position, state.eventsProcessed - lastMarkEvents);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            block[position++] = (byte) (digest >>> shift);
+        }
+        this.position = position;
+        lastMarkTime = time;
+        lastMarkEvents = state.eventsProcessed;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            mark(state.clock);
+            if (position > block.length - MAX_RECORD) flush();
+            block[position++] = END;
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private static int putVarLong(byte[] block, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            block[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        block[position++] = (byte) value;
+        return position;
+    }
+    
+    private void flush() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(block, 0, position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        position = 0;
+    }
+}
+
+// Re-runs a recording through the engine without telemetry, coverage, checkpoints or metrics, checking
+// every recorded checkpoint as it goes.
+class RunReplayer implements RunObserver, Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private final List<AttackModule> attackModules;
+    private final List<DefenseModule> defenseModules;
+    private final Config config;
+    private final SimulationState state;
+    private final SimulationEngine engine;
+    private long digest;
+    private long nextMark;
+    private long lastMarkTime;
+    private long lastMarkEvents;
+    private long records;
+    private long fastForwardTo = Long.MAX_VALUE;
+    private long stepped;
+    private boolean finished;
+    
+    public RunReplayer(Path path, List<AttackModule> attackModules, List<DefenseModule> defenseModules) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.attackModules = attackModules;
+        this.defenseModules = defenseModules;
+        buffer.limit(0);
+        fill();
+        
+        try {
+            if (buffer.remaining() < 12 || buffer.getLong() != RunRecorder.MAGIC) {
+                throw new IOException("Not a recorded run: " + path.getFileName());
+            }
+            int version = buffer.getInt();
+            if (version != RunRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + version);
+            }
+            long seed = buffer.getLong();
+            int hostCount = buffer.getInt();
+            long startTime = buffer.getLong();
+            long endTime = buffer.getLong();
+            this.config = new Config();
+            config.setTargetHost(BinaryCodec.getString(buffer));
+            config.setTargetPort(buffer.getInt());
+            config.setAttackIntensity(buffer.getInt());
+            config.setStealthMode(buffer.get() != 0);
+            config.setLoggingLevel(BinaryCodec.getString(buffer));
+            config.setTimeout(buffer.getInt());
+            config.setSimulationHosts(hostCount);
+            config.setRandomSeed(seed);
+            checkModules(attackModules.size(), attackModules.stream().map(AttackModule::getName).toArray(String[]::new));
+            checkModules(defenseModules.size(), defenseModules.stream().map(DefenseModule::getName).toArray(String[]::new));
+            
+            this.state = SimulationState.create(config, attackModules.size(), defenseModules.size(), endTime);
+            state.clock = startTime;
+            this.lastMarkTime = startTime;
+            this.nextMark = RunRecorder.nextMark(startTime);
+            this.engine = new SimulationEngine(config, attackModules, defenseModules, state);
+            engine.enableRecording(this);
+            engine.seedCampaign();
+        } catch (BufferUnderflowException e) {
+            channel.close();
+            throw new IOException("Truncated recording header");
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    public Config getConfig() { return config; }
+    public SimulationState getState() { return state; }
+    public long getRecords() { return records; }
+    public long getPendingEvents() { return state.queue.size(); }
+    public boolean isFinished() { return finished; }
+    
+    // Applies events without output up to fastForwardTo, then re-drives the modules for the next
+    // `steps` events before pausing. A pause lands on a timestamp boundary, so it may step a few more.
+    public void replay(long fastForwardTo, int steps) throws IOException {
+        this.fastForwardTo = fastForwardTo;
+        if (fastForwardTo >= 0) engine.runWindow(fastForwardTo + 1);
+        stepped = 0;
+        while (stepped < steps) {
+            long next = engine.nextEventTime();
+            if (next == Long.MAX_VALUE) break;
+            engine.runWindow(steps == Integer.MAX_VALUE ? Long.MAX_VALUE : next + 1);
+        }
+        if (engine.nextEventTime() == Long.MAX_VALUE) {
+            check(RunRecorder.MARK, state.clock);
+            check(RunRecorder.END, state.clock);
+            finished = true;
+        }
+    }
+    
+    @Override
+    public void attempt(long time, int host, int stage, boolean success, long detectedBy) throws IOException {
+        if (time >= nextMark) {
+            check(RunRecorder.MARK, time);
+            nextMark = RunRecorder.nextMark(time);
+        }
+        digest = RunRecorder.fold(digest, time, host, stage, success, detectedBy);
+        if (time > fastForwardTo) {
+            stepped++;
+            redrive(time, host, stage, success, detectedBy);
+        }
+    }
+    
+    private void check(byte expected, long time) throws IOException {
+        if (buffer.remaining() < RunRecorder.MAX_RECORD) fill();
+        if (!buffer.hasRemaining()) throw new EOFException("Recording ended without an end marker");
+        byte tag = buffer.get();
+        if (tag != expected) {
+            throw new IOException(tag == RunRecorder.END ? "Replay ran past the end of the recording at " + SimulationEngine.formatTime(time)
+                    : tag == RunRecorder.MARK ? "Replay ended before the recording did" : "Corrupt recording: unknown record type " + tag);
+        }
+        if (tag == RunRecorder.END) return;
+        long recordedTime = lastMarkTime + BinaryCodec.getVarLong(buffer);
+        long recordedEvents = lastMarkEvents + BinaryCodec.getVarLong(buffer);
+        long recordedDigest = buffer.getLong();
+        if (recordedTime != time || recordedEvents != state.eventsProcessed || recordedDigest != digest) {
+            throw new IOException("Replay diverged from the recording by " + SimulationEngine.formatTime(time)
+                    + " (" + state.eventsProcessed + " events replayed, " + recordedEvents + " recorded)");
+        }
+        lastMarkTime = recordedTime;
+        lastMarkEvents = recordedEvents;
+        records++;
+    }
+    
+    private void redrive(long time, int host, int stage, boolean success, long detectedBy) {
+        AttackModule module = attackModules.get(stage);
+        if (Logger.isInfoEnabled()) {
+            Logger.info("[{}] host {} -> {} {}", SimulationEngine.formatTime(time), host, module.getName(),
+                    success ? "succeeded" : "failed");
+        }
+        module.execute(config);
+        for (int d = 0; d < defenseModules.size(); d++) {
+            if ((detectedBy & (1L << d)) == 0) continue;
+            DefenseModule defense = defenseModules.get(d);
+            if (Logger.isWarnEnabled()) Logger.warn("Host {} detected by {}", host, defense.getName());
+            defense.execute(config);
+        }
+    }
+    
+    private void checkModules(int expectedCount, String[] expectedNames) throws IOException {
+        int count = buffer.getInt();
+        if (count != expectedCount) {
+            throw new IOException("Recording has " + count + " modules where " + expectedCount + " are loaded");
+        }
+        for (String expected : expectedNames) {
+            String name = BinaryCodec.getString(buffer);
+            if (!name.equals(expected)) {
+                throw new IOException("Recording module '" + name + "' does not match '" + expected + "'");
+            }
+        }
+    }
+    
+    private void fill() throws IOException {
+        buffer.compact();
+        while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+            // keep reading until the buffer is full or the file is exhausted
+        }
+        buffer.flip();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
+
+interface TelemetrySink extends Closeable {
+    int ATTEMPT = 1;
+    int SUCCESS = 2;
+    int DETECTION = 3;
+    int LATERAL = 4;
+    String[] KIND_NAMES = {"", "ATTEMPT", "SUCCESS", "DETECTION", "LATERAL"};
+    
+    void record(long time, int host, int kind, int technique, int sensor, int peer) throws IOException;
+}
+
+interface TelemetryCursor extends Closeable {
+    boolean next() throws IOException;
+    long time();
+    int host();
+    int kind();
+    String technique();
+    String sensor();
+    int peer();
+}
+
+enum TelemetryFormat {
+    BINARY, JSONL;
+    
+    static TelemetryFormat forPath(Path path) {
+        return path.toString().endsWith(".jsonl") ? JSONL : BINARY;
+    }
+    
+    TelemetrySink open(Path path, String[] techniques, String[] sensors) throws IOException {
+        return this == JSONL ? new JsonlTelemetryWriter(path, techniques, sensors) : new BinaryTelemetryWriter(path, techniques, sensors);
+    }
+    
+    TelemetryCursor read(Path path) throws IOException {
+        return this == JSONL ? new JsonlTelemetryReader(path) : new BinaryTelemetryReader(path);
+    }
+}
+
+/*
+ * Binary telemetry format, version 1. All multi-byte fixed fields are big-endian.
+ *
+ *   file header   int magic 'XTEL', short version, short reserved, long createdAt (epoch ms)
+ *   block         int payloadLength, int recordCount, long baseTime, payload
+ *   record        byte type, then by type:
+ *     0 DICTIONARY  varint id, varint length, UTF-8 bytes
+ *     1 ATTEMPT     varint timeDelta, varint host, varint technique
+ *     2 SUCCESS     varint timeDelta, varint host, varint technique
+ *     3 DETECTION   varint timeDelta, varint host, varint technique, varint sensor
+ *     4 LATERAL     varint timeDelta, varint host, varint technique, varint peer
+ *
+ * Time deltas are relative to the previous event in the same block (the first to baseTime), so
+ * blocks decode independently. Strings are defined once per file before their first use and
+ * referenced by id afterwards.
+ */
+class BinaryTelemetryWriter implements TelemetrySink {
+    static final int MAGIC = 0x5854454C;
+    static final short VERSION = 1;
+    static final int FILE_HEADER = 16;
+    static final int BLOCK_HEADER = 16;
+    static final byte DICTIONARY = 0;
+    private static final int MAX_EVENT = 1 + 10 + 5 + 5 + 5;
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final String[] techniques;
+    private final String[] sensors;
+    private final int[] techniqueIds;
+    private final int[] sensorIds;
+    private int nextId = 1;
+    private int blockRecords;
+    private long blockBase;
+    private long lastTime;
+    private long events;
+    
+    public BinaryTelemetryWriter(Path path, String[] techniques, String[] sensors) throws IOException {
+        this(path, techniques, sensors, 1 << 20);
+    }
+    
+    public BinaryTelemetryWriter(Path path, String[] techniques, String[] sensors, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.techniques = techniques;
+        this.sensors = sensors;
+        this.techniqueIds = new int[techniques.length];
+        this.sensorIds = new int[sensors.length];
+        
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(System.currentTimeMillis()).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        startBlock(0L);
+    }
+    
+    public long getEvents() {
+        return events;
+    }
+    
+    @Override
+    public void record(long time, int host, int kind, int technique, int sensor, int peer) throws IOException {
+        int techniqueId = techniqueIds[technique];
+        if (techniqueId == 0) techniqueId = techniqueIds[technique] = define(techniques[technique]);
+        int sensorId = 0;
+        if (kind == DETECTION) {
+            sensorId = sensorIds[sensor];
+            if (sensorId == 0) sensorId = sensorIds[sensor] = define(sensors[sensor]);
+        }
+        if (buffer.remaining() < MAX_EVENT) {
+            flushBlock();
+            startBlock(time);
+        }
+        
+        buffer.put((byte) kind);
+        BinaryCodec.putVarLong(buffer, time - lastTime);
+        BinaryCodec.putVarLong(buffer, host);
+        BinaryCodec.putVarLong(buffer, techniqueId);
+        if (kind == DETECTION) BinaryCodec.putVarLong(buffer, sensorId);
+        if (kind == LATERAL) BinaryCodec.putVarLong(buffer, peer);
+        lastTime = time;
+        blockRecords++;
+        events++;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private int define(String value) throws IOException {
+        byte[] bytes = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        if (buffer.remaining() < bytes.length + 11) {
+            flushBlock();
+            startBlock(lastTime);
+        }
+        int id = nextId++;
+        buffer.put(DICTIONARY);
+        BinaryCodec.putVarLong(buffer, id);
+        BinaryCodec.putVarLong(buffer, bytes.length);
+        buffer.put(bytes);
+        blockRecords++;
+        return id;
+    }
+    
+    private void startBlock(long baseTime) {
+        buffer.clear();
+        buffer.position(BLOCK_HEADER);
+        blockRecords = 0;
+        blockBase = baseTime;
+        lastTime = baseTime;
+    }
+    
+    private void flushBlock() throws IOException {
+        if (blockRecords == 0) return;
+        buffer.putInt(0, buffer.position() - BLOCK_HEADER);
+        buffer.putInt(4, blockRecords);
+        buffer.putLong(8, blockBase);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        blockRecords = 0;
+    }
+}
+
+// Flyweight cursor: fields of the current record are decoded straight out of the mapped file
+// into primitives; the only strings are the dictionary entries, created once per file.
+class BinaryTelemetryReader implements TelemetryCursor {
+    private static final long WINDOW = 256L << 20;
+    
+    private final FileChannel channel;
+    private final long size;
+    private final List<String> dictionary = new ArrayList<>();
+    private MappedByteBuffer window;
+    private long windowOffset;
+    private int blockEnd;
+    private long time;
+    private int host;
+    private int kind;
+    private int technique;
+    private int sensor;
+    private int peer;
+    
+    public BinaryTelemetryReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        dictionary.add(null);
+        map(0L);
+        if (size < BinaryTelemetryWriter.FILE_HEADER || window.getInt() != BinaryTelemetryWriter.MAGIC) {
+            channel.close();
+            throw new IOException("Not a telemetry file: " + path.getFileName());
+        }
+        short version = window.getShort();
+        if (version != BinaryTelemetryWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported telemetry version " + version);
+        }
+        window.position(BinaryTelemetryWriter.FILE_HEADER);
+        blockEnd = BinaryTelemetryWriter.FILE_HEADER;
+    }
+    
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            if (window.position() >= blockEnd && !nextBlock()) return false;
+            kind = window.get();
+            if (kind == BinaryTelemetryWriter.DICTIONARY) {
+                int id = (int) BinaryCodec.getVarLong(window);
+                byte[] bytes = new byte[(int) BinaryCodec.getVarLong(window)];
+                window.get(bytes);
+                while (dictionary.size() <= id) dictionary.add(null);
+                dictionary.set(id, new String(bytes, java.nio.charset.StandardCharsets.UTF_8));
+                continue;
+            }
+            time += BinaryCodec.getVarLong(window);
+            host = (int) BinaryCodec.getVarLong(window);
+            technique = (int) BinaryCodec.getVarLong(window);
+            sensor = kind == TelemetrySink.DETECTION ? (int) BinaryCodec.getVarLong(window) : 0;
+            peer = kind == TelemetrySink.LATERAL ? (int) BinaryCodec.getVarLong(window) : -1;
+            return true;
+        }
+    }
+    
+    @Override public long time() { return time; }
+    @Override public int host() { return host; }
+    @Override public int kind() { return kind; }
+    public int techniqueId() { return technique; }
+    public int sensorId() { return sensor; }
+    @Override public String technique() { return dictionary.get(technique); }
+    @Override public String sensor() { return sensor == 0 ? null : dictionary.get(sensor); }
+    @Override public int peer() { return peer; }
+    
+    public String dictionaryEntry(int id) {
+        return dictionary.get(id);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    private boolean nextBlock() throws IOException {
+        long offset = windowOffset + blockEnd;
+        if (offset + BinaryTelemetryWriter.BLOCK_HEADER > size) return false;
+        if (blockEnd + BinaryTelemetryWriter.BLOCK_HEADER > window.limit()) map(offset);
+        int start = (int) (offset - windowOffset);
+        int length = window.getInt(start);
+        if (start + BinaryTelemetryWriter.BLOCK_HEADER + length > window.limit()) {
+            map(offset);
+            start = 0;
+        }
+        if (windowOffset + start + BinaryTelemetryWriter.BLOCK_HEADER + length > size) {
+            throw new EOFException("Truncated telemetry block at offset " + offset);
+        }
+        time = window.getLong(start + 8);
+        window.position(start + BinaryTelemetryWriter.BLOCK_HEADER);
+        blockEnd = start + BinaryTelemetryWriter.BLOCK_HEADER + length;
+        return true;
+    }
+    
+    private void map(long offset) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, size - offset));
+        windowOffset = offset;
+    }
+}
+
+class JsonlTelemetryWriter implements TelemetrySink {
+    private final BufferedWriter writer;
+    private final String[] techniques;
+    private final String[] sensors;
+    private final StringBuilder line = new StringBuilder(128);
+    
+    public JsonlTelemetryWriter(Path path, String[] techniques, String[] sensors) throws IOException {
+        this.writer = Files.newBufferedWriter(path, java.nio.charset.StandardCharsets.UTF_8);
+        this.techniques = techniques;
+        this.sensors = sensors;
+    }
+    
+    @Override
+    public void record(long time, int host, int kind, int technique, int sensor, int peer) throws IOException {
+        line.setLength(0);
+        line.append("{\"time\":").append(time)
+            .append(",\"host\":").append(host)
+            .append(",\"kind\":\"").append(KIND_NAMES[kind])
+            .append("\",\"technique\":\"");
+        escape(techniques[technique]);
+        line.append('"');
+        if (kind == DETECTION) {
+            line.append(",\"sensor\":\"");
+            escape(sensors[sensor]);
+            line.append('"');
+        }
+        if (kind == LATERAL) line.append(",\"peer\":").append(peer);
+        line.append("}\n");
+        writer.append(line);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+    
+    private void escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') line.append('\\');
+            line.append(c);
+        }
+    }
+}
+
+class JsonlTelemetryReader implements TelemetryCursor {
+    private final BufferedReader reader;
+    private long time;
+    private int host;
+    private int kind;
+    private String technique;
+    private String sensor;
+    private int peer;
+    
+    public JsonlTelemetryReader(Path path) throws IOException {
+        this.reader = Files.newBufferedReader(path, java.nio.charset.StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public boolean next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) return false;
+        } while (line.isBlank());
+        
+        time = Long.parseLong(field(line, "time"));
+        host = Integer.parseInt(field(line, "host"));
+        kind = Arrays.asList(TelemetrySink.KIND_NAMES).indexOf(field(line, "kind"));
+        technique = field(line, "technique");
+        sensor = field(line, "sensor");
+        String peerValue = field(line, "peer");
+        peer = peerValue == null ? -1 : Integer.parseInt(peerValue);
+        return true;
+    }
+    
+    @Override public long time() { return time; }
+    @Override public int host() { return host; }
+    @Override public int kind() { return kind; }
+    @Override public String technique() { return technique; }
+    @Override public String sensor() { return sensor; }
+    @Override public int peer() { return peer; }
+    
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+    
+    private static String field(String line, String name) throws IOException {
+        int key = line.indexOf("\"" + name + "\":");
+        if (key < 0) return null;
+        int start = key + name.length() + 3;
+        if (line.charAt(start) == '"') {
+            StringBuilder value = new StringBuilder();
+            for (int i = start + 1; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '\\') {
+                    value.append(line.charAt(++i));
+                } else if (c == '"') {
+                    return value.toString();
+                } else {
+                    value.append(c);
+                }
+            }
+            throw new IOException("Unterminated string in telemetry line: " + line);
+        }
+        int end = start;
+        while (end < line.length() && line.charAt(end) != ',' && line.charAt(end) != '}') end++;
+        return line.substring(start, end);
+    }
+}
+
+class TelemetryBenchmark {
+    static void run(Path directory, int events, String[] techniques, String[] sensors) throws IOException {
+        if (events <= 0) throw new IllegalArgumentException("Event count must be positive");
+        long[] times = new long[events];
+        int[] hosts = new int[events];
+        byte[] kinds = new byte[events];
+        byte[] techniqueIds = new byte[events];
+        byte[] sensorIds = new byte[events];
+        long clock = 0;
+        long seed = 7L;
+        for (int i = 0; i < events; i++) {
+            long random = SimulationState.mix(seed += 0x9E3779B97F4A7C15L);
+            clock += (random & 0xFFFF);
+            times[i] = clock;
+            hosts[i] = (int) ((random >>> 16) % 100_000);
+            kinds[i] = (byte) (1 + (random >>> 40) % 4);
+            techniqueIds[i] = (byte) ((random >>> 44) % techniques.length);
+            sensorIds[i] = (byte) ((random >>> 52) % sensors.length);
+        }
+        
+        Files.createDirectories(directory);
+        System.out.printf("%-8s %10s %12s %14s %12s %14s%n", "Format", "Size (MB)", "Write (ms)", "Write (ev/s)", "Read (ms)", "Read (ev/s)");
+        for (String name : new String[]{"telemetry-benchmark.xtel", "telemetry-benchmark.jsonl"}) {
+            Path path = directory.resolve(name);
+            long started = System.nanoTime();
+            try (TelemetrySink sink = TelemetryFormat.forPath(path).open(path, techniques, sensors)) {
+                for (int i = 0; i < events; i++) {
+                    sink.record(times[i], hosts[i], kinds[i], techniqueIds[i], sensorIds[i], hosts[i] + 1);
+                }
+            }
+            long written = System.nanoTime() - started;
+            
+            started = System.nanoTime();
+            long checksum = 0;
+            int count = 0;
+            try (TelemetryCursor cursor = TelemetryFormat.forPath(path).read(path)) {
+                while (cursor.next()) {
+                    checksum += cursor.time() + cursor.host() + cursor.kind() + cursor.technique().length();
+                    count++;
+                }
+            }
+            long read = System.nanoTime() - started;
+            if (count != events) {
+                throw new IOException("Benchmark read back " + count + " of " + events + " events from " + name);
+            }
+            
+            System.out.printf("%-8s %10.1f %12.0f %14.0f %12.0f %14.0f%n", name.endsWith(".jsonl") ? "JSONL" : "Binary",
+                    Files.size(path) / 1048576.0, written / 1e6, events / (written / 1e9), read / 1e6, events / (read / 1e9));
+            Files.delete(path);
+        }
+    }
+}
+
+enum LogFormat {
+    JSONL, SYSLOG, CSV, ZEEK;
+    
+    static LogFormat detect(Path path, String firstLine) {
+        String name = path.getFileName().toString().toLowerCase();
+        if (firstLine.startsWith("#separator") || name.endsWith(".tsv")) return ZEEK;
+        if (firstLine.startsWith("{") || name.endsWith(".jsonl") || name.endsWith(".json")) return JSONL;
+        if (name.endsWith(".csv")) return CSV;
+        return SYSLOG;
+    }
+}
+
+// Word-at-a-time byte search over little-endian buffers: eight bytes are tested per step with the
+// classic has-zero-byte trick, and the lowest flagged byte is always a true match.
+final class ByteScan {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long CASE = 0x2020202020202020L;
+    
+    private ByteScan() {
+    }
+    
+    static int indexOf(ByteBuffer buffer, int from, int limit, byte target) {
+        long pattern = (target & 0xFFL) * ONES;
+        int i = from;
+        while (i + 8 <= limit) {
+            long word = buffer.getLong(i) ^ pattern;
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0) return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            i += 8;
+        }
+        while (i < limit && buffer.get(i) != target) i++;
+        return i;
+    }
+    
+    // Finds a lower-case ASCII letter in either case. Folding sets bit 5 of every byte, so a few
+    // non-letters also match; callers verify the candidate anyway.
+    static int indexOfLetter(ByteBuffer buffer, int from, int limit, byte lowerCase) {
+        long pattern = (lowerCase & 0xFFL) * ONES;
+        int i = from;
+        while (i + 8 <= limit) {
+            long word = (buffer.getLong(i) | CASE) ^ pattern;
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0) return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            i += 8;
+        }
+        while (i < limit && (buffer.get(i) | 0x20) != lowerCase) i++;
+        return i;
+    }
+}
+
+// Reusable view of one parsed line: addresses and ports are decoded to primitives, text fields are
+// kept as offsets into the mapped chunk so rules can match them without creating strings.
+class LogRecord {
+    static final int SOURCE = 0;
+    static final int DESTINATION = 1;
+    static final int PORT = 2;
+    static final int USER = 3;
+    static final int MESSAGE = 4;
+    
+    private static final String[][] FIELD_NAMES = {
+        {"src", "src_ip", "source", "source_ip", "client_ip", "id.orig_h"},
+        {"dst", "dst_ip", "destination", "destination_ip", "server_ip", "id.resp_h"},
+        {"dst_port", "dport", "destination_port", "port", "id.resp_p"},
+        {"user", "username", "user_name", "account"},
+        {"message", "msg", "action", "event", "outcome"}
+    };
+    private static final int MAX_KEY = 32;
+    private static final byte[][][] KEYS_BY_LENGTH = new byte[MAX_KEY][][];
+    private static final int[][] FIELDS_BY_LENGTH = new int[MAX_KEY][];
+    
+    static {
+        for (int length = 0; length < MAX_KEY; length++) {
+            List<byte[]> keys = new ArrayList<>();
+            List<Integer> fields = new ArrayList<>();
+            for (int field = 0; field < FIELD_NAMES.length; field++) {
+                for (String name : FIELD_NAMES[field]) {
+                    if (name.length() != length) continue;
+                    keys.add(name.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                    fields.add(field);
+                }
+            }
+            KEYS_BY_LENGTH[length] = keys.toArray(new byte[0][]);
+            FIELDS_BY_LENGTH[length] = fields.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+    
+    ByteBuffer buffer;
+    int sourceIp;
+    int destinationIp;
+    int destinationPort;
+    int userStart;
+    int userEnd;
+    int messageStart;
+    int messageEnd;
+    
+    void reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+        sourceIp = 0;
+        destinationIp = 0;
+        destinationPort = -1;
+        userStart = userEnd = 0;
+        messageStart = messageEnd = 0;
+    }
+    
+    void set(int field, int start, int end) {
+        switch (field) {
+            case SOURCE:
+                sourceIp = parseIpv4(buffer, start, end);
+                break;
+            case DESTINATION:
+                destinationIp = parseIpv4(buffer, start, end);
+                break;
+            case PORT:
+                destinationPort = parsePort(buffer, start, end);
+                break;
+            case USER:
+                userStart = start;
+                userEnd = end;
+                break;
+            case MESSAGE:
+                if (messageEnd == messageStart) {
+                    messageStart = start;
+                    messageEnd = end;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+    
+    // Patterns must start with a letter; candidates for it are found eight bytes at a time.
+    boolean messageContains(byte[] lowerCasePattern) {
+        int last = messageEnd - lowerCasePattern.length;
+        byte first = lowerCasePattern[0];
+        outer:
+        for (int i = ByteScan.indexOfLetter(buffer, messageStart, last + 1, first); i <= last;
+             i = ByteScan.indexOfLetter(buffer, i + 1, last + 1, first)) {
+            for (int j = 0; j < lowerCasePattern.length; j++) {
+                int c = buffer.get(i + j);
+                if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+                if (c != lowerCasePattern[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    String user() {
+        return text(userStart, userEnd);
+    }
+    
+    String message() {
+        return text(messageStart, messageEnd);
+    }
+    
+    private String text(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+    
+    static int fieldFor(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length >= MAX_KEY) return -1;
+        byte[][] keys = KEYS_BY_LENGTH[length];
+        for (int i = 0; i < keys.length; i++) {
+            if (matches(buffer, start, end, keys[i])) return FIELDS_BY_LENGTH[length][i];
+        }
+        return -1;
+    }
+    
+    static int fieldFor(String name) {
+        for (int field = 0; field < FIELD_NAMES.length; field++) {
+            for (String alias : FIELD_NAMES[field]) {
+                if (alias.equalsIgnoreCase(name)) return field;
+            }
+        }
+        return -1;
+    }
+    
+    static boolean matches(ByteBuffer buffer, int start, int end, byte[] key) {
+        if (end - start != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(start + i) != key[i]) return false;
+        }
+        return true;
+    }
+    
+    static int parseIpv4(String text) {
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+        return parseIpv4(bytes, 0, bytes.limit());
+    }
+    
+    // Returns the address as an int, or 0 for anything that is not a dotted-quad IPv4 address.
+    static int parseIpv4(ByteBuffer buffer, int start, int end) {
+        int address = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) return 0;
+            } else if (c == '.' && value >= 0 && octets < 3) {
+                address = (address << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return 0;
+            }
+        }
+        if (octets != 3 || value < 0) return 0;
+        return (address << 8) | value;
+    }
+    
+    static int parsePort(ByteBuffer buffer, int start, int end) {
+        int value = 0;
+        if (start == end) return -1;
+        for (int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+            if (value > 65535) return -1;
+        }
+        return value;
+    }
+}
+
+class IngestReport {
+    long bytes;
+    long records;
+    long errors;
+    long elapsedNanos;
+    final long[] alerts;
+    final List<String> errorSamples = new ArrayList<>();
+    
+    IngestReport(int modules) {
+        this.alerts = new long[modules];
+    }
+    
+    void merge(IngestReport other) {
+        bytes += other.bytes;
+        records += other.records;
+        errors += other.errors;
+        for (int i = 0; i < alerts.length; i++) {
+            alerts[i] += other.alerts[i];
+        }
+        for (String sample : other.errorSamples) {
+            if (errorSamples.size() < IngestChunkParser.MAX_ERROR_SAMPLES) errorSamples.add(sample);
+        }
+    }
+}
+
+class LogIngestor {
+    private static final long MAX_CHUNK = 256L << 20;
+    private static final int PROBE = 64 * 1024;
+    
+    private final List<DefenseModule> modules;
+    private final ExecutorService executor;
+    private final int parallelism;
+    
+    public LogIngestor(List<DefenseModule> modules, ExecutorService executor) {
+        this.modules = modules;
+        this.executor = executor;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+    }
+    
+    // Splits the file into line-aligned chunks and parses each from its own mapping in parallel.
+    public IngestReport ingest(Path path) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer probe = ByteBuffer.allocate((int) Math.min(size, PROBE));
+            channel.read(probe, 0);
+            probe.flip();
+            String head = java.nio.charset.StandardCharsets.UTF_8.decode(probe).toString();
+            String firstLine = head.lines().findFirst().orElse("");
+            LogFormat format = LogFormat.detect(path, firstLine);
+            
+            int[] columns = null;
+            long dataStart = 0;
+            if (format == LogFormat.CSV) {
+                columns = columnFields(firstLine.split(",", -1));
+                dataStart = lineEnd(channel, 0, size);
+            } else if (format == LogFormat.ZEEK) {
+                while (dataStart < size) {
+                    long next = lineEnd(channel, dataStart, size);
+                    String line = readLine(channel, dataStart, next);
+                    if (!line.startsWith("#")) break;
+                    if (line.startsWith("#fields\t")) columns = columnFields(line.substring(8).split("\t", -1));
+                    dataStart = next;
+                }
+                if (columns == null) throw new IOException("Zeek log without a #fields header: " + path.getFileName());
+            }
+            
+            int chunks = (int) Math.max(parallelism * 4L, (size - dataStart + MAX_CHUNK - 1) / MAX_CHUNK);
+            List<Future<IngestReport>> results = new ArrayList<>();
+            long chunkStart = dataStart;
+            for (int i = 1; i <= chunks && chunkStart < size; i++) {
+                long chunkEnd = i == chunks ? size : lineEnd(channel, dataStart + (size - dataStart) * i / chunks, size);
+                if (chunkEnd <= chunkStart) continue;
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart);
+                results.add(executor.submit(new IngestChunkParser(chunk, chunkStart, format, columns, modules)));
+                chunkStart = chunkEnd;
+            }
+            
+            IngestReport report = new IngestReport(modules.size());
+            for (Future<IngestReport> result : results) {
+                try {
+                    report.merge(result.get());
+                } catch (ExecutionException e) {
+                    throw new IOException("Parsing failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+            report.bytes = size;
+            report.elapsedNanos = System.nanoTime() - started;
+            return report;
+        }
+    }
+    
+    private static int[] columnFields(String[] names) {
+        int[] fields = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            fields[i] = LogRecord.fieldFor(names[i].trim().replace("\"", ""));
+        }
+        return fields;
+    }
+    
+    private static long lineEnd(FileChannel channel, long offset, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return offset + i + 1;
+            }
+            offset += read;
+        }
+        return size;
+    }
+    
+    private static String readLine(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(end - start, PROBE));
+        channel.read(buffer, start);
+        buffer.flip();
+        return java.nio.charset.StandardCharsets.UTF_8.decode(buffer).toString().stripTrailing();
+    }
+}
+
+class IngestChunkParser implements Callable<IngestReport> {
+    static final int MAX_ERROR_SAMPLES = 5;
+    
+    private static final byte[] SOURCE_KEY = "SRC=".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] DESTINATION_KEY = "DST=".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] PORT_KEY = "DPT=".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] RHOST_KEY = "rhost=".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] USER_KEY = "user=".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] FROM = "from".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] FOR = "for".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] INVALID = "invalid".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] USER = "user".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    
+    private final MappedByteBuffer buffer;
+    private final long fileOffset;
+    private final LogFormat format;
+    private final int[] columns;
+    private final int lastColumn;
+    private final List<DefenseModule> modules;
+    private final LogRecord record = new LogRecord();
+    
+    IngestChunkParser(MappedByteBuffer buffer, long fileOffset, LogFormat format, int[] columns, List<DefenseModule> modules) {
+        this.buffer = buffer;
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.fileOffset = fileOffset;
+        this.format = format;
+        this.columns = columns;
+        this.modules = modules;
+        int last = -1;
+        if (columns != null) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] >= 0) last = i;
+            }
+        }
+        this.lastColumn = last;
+    }
+    
+    @Override
+    public IngestReport call() {
+        IngestReport report = new IngestReport(modules.size());
+        int limit = buffer.limit();
+        int start = 0;
+        while (start < limit) {
+            int end = indexOfNewline(start, limit);
+            int next = end + 1;
+            if (end > start && buffer.get(end - 1) == '\r') end--;
+            
+            if (end > start && !(format == LogFormat.ZEEK && buffer.get(start) == '#')) {
+                record.reset(buffer);
+                boolean parsed;
+                switch (format) {
+                    case JSONL:
+                        parsed = parseJson(start, end);
+                        break;
+                    case CSV:
+                        parsed = parseDelimited(start, end, (byte) ',', true);
+                        break;
+                    case ZEEK:
+                        parsed = parseDelimited(start, end, (byte) '\t', false);
+                        break;
+                    default:
+                        parsed = parseSyslog(start, end);
+                }
+                if (parsed) {
+                    report.records++;
+                    for (int i = 0; i < modules.size(); i++) {
+                        if (modules.get(i).inspect(record)) report.alerts[i]++;
+                    }
+                } else {
+                    report.errors++;
+                    if (report.errorSamples.size() < MAX_ERROR_SAMPLES) {
+                        record.messageStart = start;
+                        record.messageEnd = Math.min(end, start + 80);
+                        report.errorSamples.add("offset " + (fileOffset + start) + ": " + record.message());
+                    }
+                }
+            }
+            start = next;
+        }
+        return report;
+    }
+    
+    private int indexOfNewline(int from, int limit) {
+        return ByteScan.indexOf(buffer, from, limit, (byte) '\n');
+    }
+    
+    private boolean parseJson(int start, int end) {
+        int i = skipSpaces(start, end);
+        if (i >= end || buffer.get(i) != '{') return false;
+        int last = end - 1;
+        while (last > i && buffer.get(last) == ' ') last--;
+        if (buffer.get(last) != '}') return false;
+        
+        i++;
+        while (i < last) {
+            i = ByteScan.indexOf(buffer, i, last, (byte) '"');
+            if (i >= last) break;
+            int keyEnd = stringEnd(i + 1, last);
+            if (keyEnd < 0) return false;
+            int keyStart = i + 1;
+            i = skipSpaces(keyEnd + 1, last);
+            if (i >= last || buffer.get(i) != ':') continue;
+            
+            int field = LogRecord.fieldFor(buffer, keyStart, keyEnd);
+            i = skipSpaces(i + 1, last);
+            if (i >= last) return false;
+            byte c = buffer.get(i);
+            if (c == '{' || c == '[') {
+                i = nestedEnd(i, last);
+                if (i < 0) return false;
+                continue;
+            }
+            if (c == '"') {
+                int valueEnd = stringEnd(i + 1, last);
+                if (valueEnd < 0) return false;
+                if (field >= 0) record.set(field, i + 1, valueEnd);
+                i = valueEnd + 1;
+            } else {
+                int valueEnd = i;
+                while (valueEnd < last && (c = buffer.get(valueEnd)) != ',' && c != '}' && c != ']' && c != ' ') valueEnd++;
+                if (field >= 0) record.set(field, i, valueEnd);
+                i = valueEnd;
+            }
+        }
+        return true;
+    }
+    
+    // Skips a nested object or array so only top-level keys are extracted; returns the index after it.
+    private int nestedEnd(int i, int end) {
+        int depth = 0;
+        while (i < end) {
+            byte c = buffer.get(i);
+            if (c == '"') {
+                i = stringEnd(i + 1, end);
+                if (i < 0) return -1;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+    
+    // Escapes are rare, so only quotes are searched for; a quote preceded by an odd run of
+    // backslashes is escaped and the search resumes after it.
+    private int stringEnd(int i, int end) {
+        int from = i;
+        while ((i = ByteScan.indexOf(buffer, i, end, (byte) '"')) < end) {
+            int backslashes = 0;
+            while (i - backslashes > from && buffer.get(i - backslashes - 1) == '\\') backslashes++;
+            if ((backslashes & 1) == 0) return i;
+            i++;
+        }
+        return -1;
+    }
+    
+    // Stops after the last column a rule needs, so trailing fields are never scanned.
+    private boolean parseDelimited(int start, int end, byte separator, boolean quoted) {
+        int column = 0;
+        int i = start;
+        while (column <= lastColumn) {
+            int fieldStart = i;
+            int fieldEnd;
+            if (quoted && i < end && buffer.get(i) == '"') {
+                fieldStart = ++i;
+                while (true) {
+                    i = ByteScan.indexOf(buffer, i, end, (byte) '"');
+                    if (i >= end) return false;
+                    if (i + 1 < end && buffer.get(i + 1) == '"') {
+                        i += 2;
+                        continue;
+                    }
+                    break;
+                }
+                fieldEnd = i++;
+            } else {
+                i = ByteScan.indexOf(buffer, i, end, separator);
+                fieldEnd = i;
+            }
+            
+            int field = columns[column];
+            if (field >= 0 && fieldEnd > fieldStart && !isUnset(fieldStart, fieldEnd)) {
+                record.set(field, fieldStart, fieldEnd);
+            }
+            column++;
+            if (i >= end) break;
+            if (buffer.get(i) != separator) return false;
+            i++;
+        }
+        return column > lastColumn;
+    }
+    
+    private boolean isUnset(int start, int end) {
+        return format == LogFormat.ZEEK && end - start == 1 && buffer.get(start) == '-';
+    }
+    
+    // Handles both RFC 3164 and RFC 5424 lines: the message is whatever follows the first ": ",
+    // and addresses come from iptables/PAM style key=value pairs or sshd's "for <user> from <ip>".
+    private boolean parseSyslog(int start, int end) {
+        int i = start;
+        if (buffer.get(i) == '<') {
+            while (i < end && buffer.get(i) != '>') i++;
+            if (i == end) return false;
+        }
+        int message = -1;
+        for (i = ByteScan.indexOf(buffer, i, end, (byte) ':'); i + 1 < end; i = ByteScan.indexOf(buffer, i + 1, end, (byte) ':')) {
+            if (buffer.get(i + 1) == ' ') {
+                message = i + 2;
+                break;
+            }
+        }
+        if (message < 0) return false;
+        record.set(LogRecord.MESSAGE, message, end);
+        
+        int previousStart = -1;
+        int previousEnd = -1;
+        int tokenStart = message;
+        while (tokenStart < end) {
+            int tokenEnd = ByteScan.indexOf(buffer, tokenStart, end, (byte) ' ');
+            if (tokenEnd > tokenStart) {
+                if (startsWith(tokenStart, tokenEnd, SOURCE_KEY) || startsWith(tokenStart, tokenEnd, RHOST_KEY)) {
+                    record.set(LogRecord.SOURCE, tokenStart + (buffer.get(tokenStart) == 'S' ? 4 : 6), tokenEnd);
+                } else if (startsWith(tokenStart, tokenEnd, DESTINATION_KEY)) {
+                    record.set(LogRecord.DESTINATION, tokenStart + 4, tokenEnd);
+                } else if (startsWith(tokenStart, tokenEnd, PORT_KEY)) {
+                    record.set(LogRecord.PORT, tokenStart + 4, tokenEnd);
+                } else if (startsWith(tokenStart, tokenEnd, USER_KEY)) {
+                    record.set(LogRecord.USER, tokenStart + 5, tokenEnd);
+                } else if (previousStart >= 0 && LogRecord.matches(buffer, previousStart, previousEnd, FROM)) {
+                    if (record.sourceIp == 0) record.set(LogRecord.SOURCE, tokenStart, tokenEnd);
+                } else if (previousStart >= 0 && (LogRecord.matches(buffer, previousStart, previousEnd, USER)
+                        || LogRecord.matches(buffer, previousStart, previousEnd, FOR)
+                        && !LogRecord.matches(buffer, tokenStart, tokenEnd, INVALID))) {
+                    record.set(LogRecord.USER, tokenStart, tokenEnd);
+                }
+                previousStart = tokenStart;
+                previousEnd = tokenEnd;
+            }
+            tokenStart = tokenEnd + 1;
+        }
+        return true;
+    }
+    
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+    
+    private int skipSpaces(int i, int end) {
+        while (i < end && buffer.get(i) == ' ') i++;
+        return i;
+    }
+}
+
+enum LogLevel {
+    DEBUG, INFO, WARN, ERROR;
+    
+    static LogLevel parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return INFO;
+        }
+    }
+}
+
+// Level checks are a single volatile read, and messages are only formatted on the appender
+// thread, so disabled or high-volume log calls never build strings on the caller.
+final class Logger {
+    private static final AsyncLogAppender APPENDER = new AsyncLogAppender(8192,
+            new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 65536), false));
+    private static volatile int threshold = LogLevel.INFO.ordinal();
+    
+    private Logger() {
+    }
+    
+    static void setLevel(String level) {
+        threshold = LogLevel.parse(level).ordinal();
+    }
+    
+    static boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= threshold;
+    }
+    
+    // Guards for call sites that would otherwise box primitives or build varargs arrays for a
+    // record that is then dropped.
+    static boolean isDebugEnabled() {
+        return threshold <= 0;
+    }
+    
+    static boolean isInfoEnabled() {
+        return threshold <= 1;
+    }
+    
+    static boolean isWarnEnabled() {
+        return threshold <= 2;
+    }
+    
+    static void debug(String message) { if (threshold <= 0) APPENDER.append(LogLevel.DEBUG, message, 0, null, null, null, null); }
+    static void debug(String pattern, Object a) { if (threshold <= 0) APPENDER.append(LogLevel.DEBUG, pattern, 1, a, null, null, null); }
+    static void debug(String pattern, Object a, Object b) { if (threshold <= 0) APPENDER.append(LogLevel.DEBUG, pattern, 2, a, b, null, null); }
+    static void debug(String pattern, Object... args) { if (threshold <= 0) APPENDER.append(LogLevel.DEBUG, pattern, -1, null, null, null, args); }
+    
+    static void info(String message) { if (threshold <= 1) APPENDER.append(LogLevel.INFO, message, 0, null, null, null, null); }
+    static void info(String pattern, Object a) { if (threshold <= 1) APPENDER.append(LogLevel.INFO, pattern, 1, a, null, null, null); }
+    static void info(String pattern, Object a, Object b) { if (threshold <= 1) APPENDER.append(LogLevel.INFO, pattern, 2, a, b, null, null); }
+    static void info(String pattern, Object... args) { if (threshold <= 1) APPENDER.append(LogLevel.INFO, pattern, -1, null, null, null, args); }
+    
+    static void warn(String message) { if (threshold <= 2) APPENDER.append(LogLevel.WARN, message, 0, null, null, null, null); }
+    static void warn(String pattern, Object a) { if (threshold <= 2) APPENDER.append(LogLevel.WARN, pattern, 1, a, null, null, null); }
+    static void warn(String pattern, Object a, Object b) { if (threshold <= 2) APPENDER.append(LogLevel.WARN, pattern, 2, a, b, null, null); }
+    static void warn(String pattern, Object... args) { if (threshold <= 2) APPENDER.append(LogLevel.WARN, pattern, -1, null, null, null, args); }
+    
+    static void error(String message) { APPENDER.append(LogLevel.ERROR, message, 0, null, null, null, null); }
+    static void error(String pattern, Object a) { APPENDER.append(LogLevel.ERROR, pattern, 1, a, null, null, null); }
+    static void error(String pattern, Object a, Object b) { APPENDER.append(LogLevel.ERROR, pattern, 2, a, b, null, null); }
+    static void error(String pattern, Object... args) { APPENDER.append(LogLevel.ERROR, pattern, -1, null, null, null, args); }
+    
+    static void flush() {
+        APPENDER.flush();
+    }
+    
+    static long backlog() {
+        return APPENDER.backlog();
+    }
+    
+    static void shutdown() {
+        APPENDER.close();
+    }
+}
+
+// Multi-producer ring of preallocated entries drained by one daemon thread. Producers claim a
+// sequence with a single atomic increment and only wait when the ring is full.
+class AsyncLogAppender implements Closeable {
+    private static final java.time.format.DateTimeFormatter TIME =
+            java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final int FLUSH_BATCH = 256;
+    
+    private static final class Entry {
+        volatile long published = -1;
+        long time;
+        LogLevel level;
+        String thread;
+        String pattern;
+        int argCount;
+        Object arg0;
+        Object arg1;
+        Object arg2;
+        Object[] args;
+    }
+    
+    private final Entry[] ring;
+    private final int mask;
+    private final java.util.concurrent.atomic.AtomicLong claimed = new java.util.concurrent.atomic.AtomicLong();
+    private final PrintStream out;
+    private final Thread worker;
+    private final StringBuilder line = new StringBuilder(256);
+    private volatile long consumed;
+    private volatile long flushed;
+    private volatile boolean running = true;
+    
+    AsyncLogAppender(int capacity, PrintStream out) {
+        this.ring = new Entry[Integer.highestOneBit(capacity - 1) << 1];
+        this.mask = ring.length - 1;
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Entry();
+        }
+        this.out = out;
+        this.worker = new Thread(this::drain, "log-appender");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    // Once the appender is closed or its worker has died, records are written on the caller's thread.
+    void append(LogLevel level, String pattern, int argCount, Object a, Object b, Object c, Object[] args) {
+        if (!running) {
+            writeDirect(level, pattern, argCount, a, b, c, args);
+            return;
+        }
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed >= ring.length) {
+            if (!running || !worker.isAlive()) {
+                writeDirect(level, pattern, argCount, a, b, c, args);
+                return;
+            }
+            LockSupport.unpark(worker);
+            Thread.yield();
+        }
+        Entry entry = ring[(int) sequence & mask];
+        entry.time = System.currentTimeMillis();
+        entry.level = level;
+        entry.thread = Thread.currentThread().getName();
+        entry.pattern = pattern;
+        entry.argCount = argCount;
+        entry.arg0 = a;
+        entry.arg1 = b;
+        entry.arg2 = c;
+        entry.args = args;
+        entry.published = sequence;
+    }
+    
+    long backlog() {
+        return claimed.get() - consumed;
+    }
+    
+    private void writeDirect(LogLevel level, String pattern, int argCount, Object a, Object b, Object c, Object[] args) {
+        Entry entry = new Entry();
+        entry.time = System.currentTimeMillis();
+        entry.level = level;
+        entry.thread = Thread.currentThread().getName();
+        entry.pattern = pattern;
+        entry.argCount = argCount;
+        entry.arg0 = a;
+        entry.arg1 = b;
+        entry.arg2 = c;
+        entry.args = args;
+        StringBuilder direct = new StringBuilder(256);
+        try {
+            format(entry, direct);
+        } catch (RuntimeException e) {
+            direct.append(" <log formatting failed: ").append(e).append('>');
+        }
+        out.println(direct);
+        out.flush();
+    }
+    
+    // Blocks until everything logged before the call has reached the output stream.
+    void flush() {
+        long target = claimed.get();
+        while (flushed < target && worker.isAlive()) {
+            LockSupport.unpark(worker);
+            LockSupport.parkNanos(100_000L);
+        }
+    }
+    
+    @Override
+    public void close() {
+        flush();
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void drain() {
+        long next = 0;
+        boolean pending = false;
+        while (running || next < claimed.get()) {
+            Entry entry = ring[(int) next & mask];
+            if (entry.published != next) {
+                if (pending) {
+                    out.flush();
+                    pending = false;
+                }
+                flushed = next;
+                if (!running) break;
+                LockSupport.parkNanos(1_000_000L);
+                continue;
+            }
+            line.setLength(0);
+            try {
+                format(entry, line);
+            } catch (RuntimeException e) {
+                line.append(" <log formatting failed: ").append(e).append('>');
+            }
+            out.println(line);
+            entry.pattern = null;
+            entry.arg0 = entry.arg1 = entry.arg2 = null;
+            entry.args = null;
+            consumed = ++next;
+            pending = true;
+            // Under sustained logging the ring never runs dry, so progress is published per batch
+            // as well; otherwise flush() would wait for a quiet moment that never comes.
+            if ((next & (FLUSH_BATCH - 1)) == 0) {
+                out.flush();
+                pending = false;
+                flushed = next;
+            }
+        }
+        out.flush();
+        flushed = next;
+    }
+    
+    private static void format(Entry entry, StringBuilder line) {
+        TIME.formatTo(Instant.ofEpochMilli(entry.time), line);
+        line.append(' ').append(entry.level.name());
+        for (int i = entry.level.name().length(); i < 5; i++) line.append(' ');
+        line.append(" [").append(entry.thread).append("] ");
+        
+        String pattern = entry.pattern;
+        int argIndex = 0;
+        int argCount = entry.argCount >= 0 ? entry.argCount : entry.args.length;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '{' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '}' && argIndex < argCount) {
+                line.append(argument(entry, argIndex++));
+                i++;
+            } else {
+                line.append(c);
+            }
+        }
+    }
+    
+    private static Object argument(Entry entry, int index) {
+        if (entry.args != null) return entry.args[index];
+        return index == 0 ? entry.arg0 : index == 1 ? entry.arg1 : entry.arg2;
+    }
+}
+
+// Columnar in-memory telemetry: one primitive array per field, with technique and sensor names
+// dictionary-encoded into bytes. Sensor is -1 for events that are not detections.
+class TelemetryStore implements TelemetrySink {
+    static final String[] COLUMNS = {"time", "host", "kind", "technique", "sensor", "peer"};
+    
+    long[] times;
+    int[] hosts;
+    byte[] kinds;
+    byte[] techniques;
+    byte[] sensors;
+    int[] peers;
+    int size;
+    // Column ranges kept as rows arrive so queries can size their counters without a scan;
+    // loaded files are not required to be in time order.
+    long minTime = Long.MAX_VALUE;
+    long maxTime = Long.MIN_VALUE;
+    int maxHost = -1;
+    int maxPeer = -1;
+    final List<String> techniqueNames;
+    final List<String> sensorNames;
+    
+    TelemetryStore(String[] techniqueNames, String[] sensorNames) {
+        this(techniqueNames, sensorNames, 1024);
+    }
+    
+    TelemetryStore(String[] techniqueNames, String[] sensorNames, int capacity) {
+        this.techniqueNames = new ArrayList<>(Arrays.asList(techniqueNames));
+        this.sensorNames = new ArrayList<>(Arrays.asList(sensorNames));
+        this.times = new long[capacity];
+        this.hosts = new int[capacity];
+        this.kinds = new byte[capacity];
+        this.techniques = new byte[capacity];
+        this.sensors = new byte[capacity];
+        this.peers = new int[capacity];
+    }
+    
+    static TelemetryStore load(Path path) throws IOException {
+        TelemetryStore store = new TelemetryStore(new String[0], new String[0]);
+        try (TelemetryCursor cursor = TelemetryFormat.forPath(path).read(path)) {
+            while (cursor.next()) {
+                int technique = intern(store.techniqueNames, cursor.technique());
+                int sensor = cursor.sensor() == null ? -1 : intern(store.sensorNames, cursor.sensor());
+                store.record(cursor.time(), cursor.host(), cursor.kind(), technique, sensor, cursor.peer());
+            }
+        }
+        return store;
+    }
+    
+    static TelemetryStore synthetic(int events, int hostCount, String[] techniqueNames, String[] sensorNames) {
+        TelemetryStore store = new TelemetryStore(techniqueNames, sensorNames, events);
+        long seed = 11L;
+        long clock = 0;
+        for (int i = 0; i < events; i++) {
+            long random = SimulationState.mix(seed += 0x9E3779B97F4A7C15L);
+            clock += random & 0x3FF;
+            int kind = 1 + (int) ((random >>> 10) & 3);
+            store.record(clock, (int) ((random >>> 12) % hostCount), kind, (int) ((random >>> 40) % techniqueNames.length),
+                    kind == DETECTION ? (int) ((random >>> 48) % sensorNames.length) : -1,
+                    kind == LATERAL ? (int) ((random >>> 20) % hostCount) : -1);
+        }
+        return store;
+    }
+    
+    private static int intern(List<String> names, String name) throws IOException {
+        int index = names.indexOf(name);
+        if (index >= 0) return index;
+        if (names.size() == 127) throw new IOException("Too many distinct names in telemetry: " + name);
+        names.add(name);
+        return names.size() - 1;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public void record(long time, int host, int kind, int technique, int sensor, int peer) {
+        if (size == times.length) grow(size * 2);
+        times[size] = time;
+        hosts[size] = host;
+        kinds[size] = (byte) kind;
+        techniques[size] = (byte) technique;
+        sensors[size] = (byte) (kind == DETECTION ? sensor : -1);
+        peers[size] = peer;
+        size++;
+        if (time < minTime) minTime = time;
+        if (time > maxTime) maxTime = time;
+        if (host > maxHost) maxHost = host;
+        if (peer > maxPeer) maxPeer = peer;
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    private void grow(int capacity) {
+        times = Arrays.copyOf(times, capacity);
+        hosts = Arrays.copyOf(hosts, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        techniques = Arrays.copyOf(techniques, capacity);
+        sensors = Arrays.copyOf(sensors, capacity);
+        peers = Arrays.copyOf(peers, capacity);
+    }
+}
+
+class TelemetryTee implements TelemetrySink {
+    private final TelemetrySink first;
+    private final TelemetrySink second;
+    
+    TelemetryTee(TelemetrySink first, TelemetrySink second) {
+        this.first = first;
+        this.second = second;
+    }
+    
+    @Override
+    public void record(long time, int host, int kind, int technique, int sensor, int peer) throws IOException {
+        first.record(time, host, kind, technique, sensor, peer);
+        second.record(time, host, kind, technique, sensor, peer);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            first.close();
+        } finally {
+            second.close();
+        }
+    }
+}
+
+class HuntQuery {
+    static final int COUNT = 0;
+    static final int GROUP = 1;
+    static final int TOP = 2;
+    static final int BUCKET = 3;
+    
+    static final int TIME = 0;
+    static final int HOST = 1;
+    static final int KIND = 2;
+    static final int TECHNIQUE = 3;
+    static final int SENSOR = 4;
+    static final int PEER = 5;
+    
+    static final String[] OPERATORS = {"<=", ">=", "!=", "=", "<", ">"};
+    
+    int command;
+    int column = -1;
+    int limit;
+    long bucketWidth;
+    long firstBucket;
+    final List<int[]> predicates = new ArrayList<>();
+    final List<Long> values = new ArrayList<>();
+    final List<String> descriptions = new ArrayList<>();
+    
+    // Grammar: count | group <column> | top <k> <column> | bucket <duration>, optionally followed by
+    // "where <column> <op> <value> [and ...]". Names may be quoted; durations take m/h/d suffixes.
+    static HuntQuery parse(String text, TelemetryStore store) {
+        List<String> tokens = tokenize(text);
+        if (tokens.isEmpty()) throw new IllegalArgumentException("Empty query");
+        HuntQuery query = new HuntQuery();
+        int i = 1;
+        switch (tokens.get(0).toLowerCase()) {
+            case "count":
+                query.command = COUNT;
+                break;
+            case "group":
+                query.command = GROUP;
+                query.column = column(token(tokens, i++));
+                break;
+            case "top":
+                query.command = TOP;
+                query.limit = Integer.parseInt(token(tokens, i++));
+                query.column = column(token(tokens, i++));
+                break;
+            case "bucket":
+                query.command = BUCKET;
+                query.bucketWidth = duration(token(tokens, i++));
+                if (query.bucketWidth <= 0) throw new IllegalArgumentException("Bucket width must be positive");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + tokens.get(0));
+        }
+        if ((query.command == GROUP || query.command == TOP) && query.column == TIME) {
+            throw new IllegalArgumentException("Use 'bucket <duration>' to group by time");
+        }
+        
+        if (i < tokens.size()) {
+            if (!tokens.get(i++).equalsIgnoreCase("where")) throw new IllegalArgumentException("Expected 'where'");
+            while (true) {
+                int column = column(token(tokens, i++));
+                String operator = token(tokens, i++);
+                int op = Arrays.asList(OPERATORS).indexOf(operator);
+                if (op < 0) throw new IllegalArgumentException("Unknown operator: " + operator);
+                String value = token(tokens, i++);
+                query.predicates.add(new int[]{column, op});
+                query.values.add(value(column, value, store));
+                query.descriptions.add(TelemetryStore.COLUMNS[column] + " " + operator + " " + value);
+                if (i >= tokens.size()) break;
+                if (!tokens.get(i++).equalsIgnoreCase("and")) throw new IllegalArgumentException("Expected 'and'");
+            }
+        }
+        return query;
+    }
+    
+    private static String token(List<String> tokens, int index) {
+        if (index >= tokens.size()) throw new IllegalArgumentException("Incomplete query");
+        return tokens.get(index);
+    }
+    
+    private static int column(String name) {
+        int column = Arrays.asList(TelemetryStore.COLUMNS).indexOf(name.toLowerCase());
+        if (column < 0) throw new IllegalArgumentException("Unknown column '" + name + "', expected one of " + Arrays.toString(TelemetryStore.COLUMNS));
+        return column;
+    }
+    
+    private static long value(int column, String value, TelemetryStore store) {
+        switch (column) {
+            case TIME:
+                return duration(value);
+            case KIND: {
+                int kind = Arrays.asList(TelemetrySink.KIND_NAMES).indexOf(value.toUpperCase());
+                if (kind <= 0) throw new IllegalArgumentException("Unknown kind: " + value);
+                return kind;
+            }
+            case TECHNIQUE:
+                return name(store.techniqueNames, value);
+            case SENSOR:
+                return name(store.sensorNames, value);
+            default:
+                return Long.parseLong(value);
+        }
+    }
+    
+    private static long name(List<String> names, String value) {
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equalsIgnoreCase(value)) return i;
+        }
+        throw new IllegalArgumentException("Unknown name '" + value + "', expected one of " + names);
+    }
+    
+    static long duration(String value) {
+        String lower = value.toLowerCase();
+        if (lower.isEmpty()) throw new IllegalArgumentException("Missing duration");
+        char unit = lower.charAt(lower.length() - 1);
+        long scale = unit == 'm' ? SimulationEngine.MINUTE : unit == 'h' ? SimulationEngine.HOUR
+                : unit == 'd' ? 24 * SimulationEngine.HOUR : 1;
+        String amount = scale == 1 ? lower : lower.substring(0, lower.length() - 1);
+        if (amount.isEmpty()) throw new IllegalArgumentException("Duration '" + value + "' has a unit but no amount");
+        try {
+            return Math.multiplyExact(Long.parseLong(amount), scale);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Duration '" + value + "' is too large");
+        }
+    }
+    
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"' || c == '\'') {
+                int end = text.indexOf(c, i + 1);
+                if (end < 0) throw new IllegalArgumentException("Unterminated quote");
+                tokens.add(text.substring(i + 1, end));
+                i = end + 1;
+            } else if ("<>=!".indexOf(c) >= 0) {
+                int end = i + 1;
+                if (end < text.length() && text.charAt(end) == '=') end++;
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && "<>=!".indexOf(text.charAt(end)) < 0) end++;
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+}
+
+// Executes hunt queries segment by segment. Predicates become branch-free arithmetic over the
+// primitive columns so C2 can auto-vectorize the mask loops; aggregation then adds the mask into
+// per-segment counters that are merged at the end.
+class HuntEngine {
+    private static final int SEGMENT = 1 << 20;
+    private static final int MAX_BUCKETS = 100_000;
+    
+    private final TelemetryStore store;
+    private final ExecutorService executor;
+    
+    HuntEngine(TelemetryStore store, ExecutorService executor) {
+        this.store = store;
+        this.executor = executor;
+    }
+    
+    public List<String> plan(HuntQuery query) {
+        int segments = Math.max(1, (store.size() + SEGMENT - 1) / SEGMENT);
+        List<String> plan = new ArrayList<>();
+        plan.add(String.format("scan %,d rows in %d segment(s) of up to %,d", store.size(), segments, SEGMENT));
+        for (String description : query.descriptions) {
+            plan.add("filter " + description + " (branch-free mask)");
+        }
+        switch (query.command) {
+            case HuntQuery.COUNT:
+                plan.add("aggregate count (mask sum)");
+                break;
+            case HuntQuery.GROUP:
+                plan.add("aggregate count by " + TelemetryStore.COLUMNS[query.column] + " (dense counters per segment)");
+                break;
+            case HuntQuery.TOP:
+                plan.add("aggregate count by " + TelemetryStore.COLUMNS[query.column] + ", keep top " + query.limit);
+                break;
+            default:
+                plan.add("aggregate count per " + query.bucketWidth / SimulationEngine.MINUTE + " min time bucket");
+        }
+        plan.add("merge segment results as they complete");
+        return plan;
+    }
+    
+    // Segments are merged as they complete with at most one per core in flight, so wide group-by
+    // counters (one slot per host) exist only a few at a time rather than once per segment. A
+    // segment never exceeds int range, so its counters are half the width of the merged result.
+    public long[] execute(HuntQuery query) throws InterruptedException, ExecutionException {
+        if (query.command == HuntQuery.BUCKET) {
+            query.firstBucket = store.size() == 0 ? 0 : Math.floorDiv(store.minTime, query.bucketWidth);
+        }
+        int width = counterWidth(query);
+        int inFlight = Runtime.getRuntime().availableProcessors();
+        ExecutorCompletionService<int[]> completions = new ExecutorCompletionService<>(executor);
+        long[] result = new long[width];
+        int pending = 0;
+        int from = 0;
+        try {
+            while (from < store.size() || pending > 0) {
+                while (from < store.size() && pending < inFlight) {
+                    int start = from;
+                    int end = Math.min(store.size(), from + SEGMENT);
+                    completions.submit(() -> executeSegment(query, start, end, width));
+                    pending++;
+                    from = end;
+                }
+                Future<int[]> done = completions.take();
+                pending--;
+                int[] counts = done.get();
+                for (int i = 0; i < width; i++) {
+                    result[i] += counts[i];
+                }
+            }
+        } finally {
+            while (pending-- > 0) {
+                completions.take();
+            }
+        }
+        return result;
+    }
+    
+    private int counterWidth(HuntQuery query) {
+        switch (query.command) {
+            case HuntQuery.COUNT:
+                return 1;
+            case HuntQuery.BUCKET: {
+                if (store.size() == 0) return 1;
+                // A wrapped difference means the span exceeds a long and is far too wide anyway.
+                long span = Math.floorDiv(store.maxTime, query.bucketWidth) - query.firstBucket;
+                if (span < 0 || span >= MAX_BUCKETS) throw new IllegalArgumentException("Too many time buckets; use a wider bucket");
+                return (int) span + 1;
+            }
+            default:
+                if (query.column == HuntQuery.HOST) return Math.max(0, store.maxHost) + 2;
+                if (query.column == HuntQuery.PEER) return Math.max(0, store.maxPeer) + 2;
+                return 257;
+        }
+    }
+    
+    // Without predicates there is no mask at all and the aggregations count rows directly.
+    private int[] executeSegment(HuntQuery query, int start, int end, int width) {
+        int length = end - start;
+        byte[] mask = query.predicates.isEmpty() ? null : new byte[length];
+        if (mask != null) Arrays.fill(mask, (byte) 1);
+        for (int p = 0; p < query.predicates.size(); p++) {
+            int[] predicate = query.predicates.get(p);
+            long value = query.values.get(p);
+            switch (predicate[0]) {
+                case HuntQuery.TIME:
+                    filterLong(store.times, start, mask, length, predicate[1], value);
+                    break;
+                case HuntQuery.HOST:
+                    filterInt(store.hosts, start, mask, length, predicate[1], value);
+                    break;
+                case HuntQuery.PEER:
+                    filterInt(store.peers, start, mask, length, predicate[1], value);
+                    break;
+                case HuntQuery.KIND:
+                    filterByte(store.kinds, start, mask, length, predicate[1], value);
+                    break;
+                case HuntQuery.TECHNIQUE:
+                    filterByte(store.techniques, start, mask, length, predicate[1], value);
+                    break;
+                default:
+                    filterByte(store.sensors, start, mask, length, predicate[1], value);
+            }
+        }
+        
+        int[] counts = new int[width];
+        switch (query.command) {
+            case HuntQuery.COUNT: {
+                int total = mask == null ? length : 0;
+                if (mask != null) for (int i = 0; i < length; i++) total += mask[i];
+                counts[0] = total;
+                break;
+            }
+            case HuntQuery.BUCKET: {
+                long[] times = store.times;
+                long bucket = query.bucketWidth;
+                long first = query.firstBucket;
+                if (mask == null) {
+                    for (int i = 0; i < length; i++) counts[(int) (Math.floorDiv(times[start + i], bucket) - first)]++;
+                } else {
+                    for (int i = 0; i < length; i++) counts[(int) (Math.floorDiv(times[start + i], bucket) - first)] += mask[i];
+                }
+                break;
+            }
+            default:
+                switch (query.column) {
+                    case HuntQuery.HOST:
+                        groupInt(store.hosts, start, mask, length, counts);
+                        break;
+                    case HuntQuery.PEER:
+                        groupInt(store.peers, start, mask, length, counts);
+                        break;
+                    case HuntQuery.KIND:
+                        groupByte(store.kinds, start, mask, length, counts);
+                        break;
+                    case HuntQuery.TECHNIQUE:
+                        groupByte(store.techniques, start, mask, length, counts);
+                        break;
+                    default:
+                        groupByte(store.sensors, start, mask, length, counts);
+                }
+        }
+        return counts;
+    }
+    
+    // Comparisons are computed from the sign bit of a long difference: (a - b) >>> 63 is 1 when a < b.
+    private static void filterLong(long[] column, int start, byte[] mask, int length, int op, long value) {
+        switch (op) {
+            case 0: for (int i = 0; i < length; i++) mask[i] &= (byte) ((value - column[start + i]) >>> 63 ^ 1); break;
+            case 1: for (int i = 0; i < length; i++) mask[i] &= (byte) ((column[start + i] - value) >>> 63 ^ 1); break;
+            case 2: for (int i = 0; i < length; i++) mask[i] &= (byte) (((column[start + i] - value) | (value - column[start + i])) >>> 63); break;
+            case 3: for (int i = 0; i < length; i++) mask[i] &= (byte) (((column[start + i] - value) | (value - column[start + i])) >>> 63 ^ 1); break;
+            case 4: for (int i = 0; i < length; i++) mask[i] &= (byte) ((column[start + i] - value) >>> 63); break;
+            default: for (int i = 0; i < length; i++) mask[i] &= (byte) ((value - column[start + i]) >>> 63);
+        }
+    }
+    
+    private static void filterInt(int[] column, int start, byte[] mask, int length, int op, long value) {
+        int v = (int) Math.max(Integer.MIN_VALUE + 1L, Math.min(Integer.MAX_VALUE - 1L, value));
+        switch (op) {
+            case 0: for (int i = 0; i < length; i++) mask[i] &= (byte) ((v - column[start + i]) >>> 31 ^ 1); break;
+            case 1: for (int i = 0; i < length; i++) mask[i] &= (byte) ((column[start + i] - v) >>> 31 ^ 1); break;
+            case 2: for (int i = 0; i < length; i++) mask[i] &= (byte) (((column[start + i] - v) | (v - column[start + i])) >>> 31); break;
+            case 3: for (int i = 0; i < length; i++) mask[i] &= (byte) (((column[start + i] - v) | (v - column[start + i])) >>> 31 ^ 1); break;
+            case 4: for (int i = 0; i < length; i++) mask[i] &= (byte) ((column[start + i] - v) >>> 31); break;
+            default: for (int i = 0; i < length; i++) mask[i] &= (byte) ((v - column[start + i]) >>> 31);
+        }
+    }
+    
+    private static void filterByte(byte[] column, int start, byte[] mask, int length, int op, long value) {
+        int v = (int) value;
+        switch (op) {
+            case 0: for (int i = 0; i < length; i++) mask[i] &= (byte) ((v - column[start + i]) >>> 31 ^ 1); break;
+            case 1: for (int i = 0; i < length; i++) mask[i] &= (byte) ((column[start + i] - v) >>> 31 ^ 1); break;
+            case 2: for (int i = 0; i < length; i++) mask[i] &= (byte) (((column[start + i] - v) | (v - column[start + i])) >>> 31); break;
+            case 3: for (int i = 0; i < length; i++) mask[i] &= (byte) (((column[start + i] - v) | (v - column[start + i])) >>> 31 ^ 1); break;
+            case 4: for (int i = 0; i < length; i++) mask[i] &= (byte) ((column[start + i] - v) >>> 31); break;
+            default: for (int i = 0; i < length; i++) mask[i] &= (byte) ((v - column[start + i]) >>> 31);
+        }
+    }
+    
+    // Slot 0 collects the -1 "none" value of the peer and sensor columns.
+    private static void groupInt(int[] column, int start, byte[] mask, int length, int[] counts) {
+        if (mask == null) {
+            for (int i = 0; i < length; i++) counts[column[start + i] + 1]++;
+        } else {
+            for (int i = 0; i < length; i++) counts[column[start + i] + 1] += mask[i];
+        }
+    }
+    
+    private static void groupByte(byte[] column, int start, byte[] mask, int length, int[] counts) {
+        if (mask == null) {
+            for (int i = 0; i < length; i++) counts[column[start + i] + 1]++;
+        } else {
+            for (int i = 0; i < length; i++) counts[column[start + i] + 1] += mask[i];
+        }
+    }
+    
+    public List<String> format(HuntQuery query, long[] counts) {
+        List<String> rows = new ArrayList<>();
+        if (query.command == HuntQuery.COUNT) {
+            rows.add(String.format("count = %,d", counts[0]));
+            return rows;
+        }
+        if (query.command == HuntQuery.BUCKET) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) rows.add(String.format("%-16s %,12d", SimulationEngine.formatTime((query.firstBucket + i) * query.bucketWidth), counts[i]));
+            }
+            return rows;
+        }
+        
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 1; i < counts.length; i++) {
+            if (counts[i] > 0) keys.add(i);
+        }
+        if (query.command == HuntQuery.TOP) {
+            PriorityQueue<Integer> top = new PriorityQueue<>(Comparator.comparingLong(key -> counts[key]));
+            for (int key : keys) {
+                top.add(key);
+                if (top.size() > query.limit) top.poll();
+            }
+            keys = new ArrayList<>(top);
+            keys.sort((a, b) -> Long.compare(counts[b], counts[a]));
+        }
+        for (int key : keys) {
+            rows.add(String.format("%-24s %,12d", label(query.column, key - 1), counts[key]));
+        }
+        return rows;
+    }
+    
+    private String label(int column, int value) {
+        switch (column) {
+            case HuntQuery.KIND:
+                return TelemetrySink.KIND_NAMES[value];
+            case HuntQuery.TECHNIQUE:
+                return store.techniqueNames.get(value);
+            case HuntQuery.SENSOR:
+                return store.sensorNames.get(value);
+            default:
+                return "host " + value;
+        }
+    }
+}
+
+// Log-linear histogram: values below 16 get exact buckets, larger values keep 4 significant bits,
+// so every recorded value lands in one of 1024 fixed buckets with under 7% error.
+class LatencyHistogram {
+    private final long[] counts = new long[1024];
+    private long total;
+    private long sum;
+    private long max;
+    
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[bucket(value)]++;
+        total++;
+        sum += value;
+        if (value > max) max = value;
+    }
+    
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+    
+    public long getCount() {
+        return total;
+    }
+    
+    public double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+    
+    public long getMax() {
+        return max;
+    }
+    
+    public long percentile(double percentile) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100.0 * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+    
+    private static int bucket(long value) {
+        if (value < 16) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - 3) * 16 + (int) ((value >>> (exponent - 4)) & 15);
+    }
+    
+    private static long upperBound(int bucket) {
+        if (bucket < 16) return bucket;
+        int exponent = bucket / 16 + 3;
+        long base = (16L + (bucket & 15)) << (exponent - 4);
+        return base + (1L << (exponent - 4)) - 1;
+    }
+}
+
+class IncidentReport {
+    long alerts;
+    long duplicates;
+    long incidents;
+    long resolved;
+    long peakOpen;
+    long analystBusy;
+    long makespan;
+    long elapsedNanos;
+    int partitions;
+    int analysts;
+    final LatencyHistogram detect = new LatencyHistogram();
+    final LatencyHistogram contain = new LatencyHistogram();
+    final LatencyHistogram recover = new LatencyHistogram();
+    final LatencyHistogram queueWait = new LatencyHistogram();
+}
+
+// Drives one response state machine per host (triage -> contain -> eradicate -> recover) from the
+// SUCCESS and DETECTION events of a telemetry store. Hosts are partitioned by id across analyst teams;
+// each partition owns its host state and analysts outright, so partitions run in parallel without
+// sharing anything but the read-only store.
+class IncidentResponseEngine {
+    static final int IDLE = 0;
+    static final int TRIAGE = 1;
+    static final int CONTAIN = 2;
+    static final int ERADICATE = 3;
+    static final int RECOVER = 4;
+    static final String[] STAGE_NAMES = {"idle", "triage", "contain", "eradicate", "recover"};
+    static final long[] SERVICE_TIME = {0, 15 * SimulationEngine.MINUTE, 45 * SimulationEngine.MINUTE,
+            2 * SimulationEngine.HOUR, 4 * SimulationEngine.HOUR};
+    // Lower rank is worked first: active containment beats eradication, which beats new triage.
+    private static final long[] STAGE_RANK = {0, 2, 0, 1, 3};
+    private static final int MAX_PARTITIONS = 16;
+    
+    private final TelemetryStore store;
+    private final int analysts;
+    private final long seed;
+    
+    IncidentResponseEngine(TelemetryStore store, int analysts, long seed) {
+        if (analysts <= 0) {
+            throw new IllegalArgumentException("Incident response needs at least one analyst");
+        }
+        this.store = store;
+        this.analysts = analysts;
+        this.seed = seed;
+    }
+    
+    public IncidentReport run(ExecutorService executor) throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        int partitions = Math.min(analysts, MAX_PARTITIONS);
+        int hostCount = 0;
+        int[] sizes = new int[partitions];
+        for (int i = 0; i < store.size(); i++) {
+            int kind = store.kinds[i];
+            if (kind == TelemetrySink.SUCCESS || kind == TelemetrySink.DETECTION) {
+                sizes[store.hosts[i] % partitions]++;
+                hostCount = Math.max(hostCount, store.hosts[i] + 1);
+            }
+        }
+        // Counting sort of the relevant rows by partition, preserving time order within each one.
+        int[] offsets = new int[partitions + 1];
+        for (int p = 0; p < partitions; p++) {
+            offsets[p + 1] = offsets[p] + sizes[p];
+        }
+        int[] rows = new int[offsets[partitions]];
+        int[] fill = Arrays.copyOf(offsets, partitions);
+        for (int i = 0; i < store.size(); i++) {
+            int kind = store.kinds[i];
+            if (kind == TelemetrySink.SUCCESS || kind == TelemetrySink.DETECTION) {
+                rows[fill[store.hosts[i] % partitions]++] = i;
+            }
+        }
+        
+        List<Callable<IncidentReport>> tasks = new ArrayList<>();
+        for (int p = 0; p < partitions; p++) {
+            int team = analysts / partitions + (p < analysts % partitions ? 1 : 0);
+            tasks.add(new IncidentPartition(store, rows, offsets[p], offsets[p + 1], p, partitions,
+                    (hostCount + partitions - 1) / partitions, team, seed));
+        }
+        IncidentReport report = new IncidentReport();
+        for (Future<IncidentReport> future : executor.invokeAll(tasks)) {
+            IncidentReport partial = future.get();
+            report.alerts += partial.alerts;
+            report.duplicates += partial.duplicates;
+            report.incidents += partial.incidents;
+            report.resolved += partial.resolved;
+            report.peakOpen += partial.peakOpen;
+            report.analystBusy += partial.analystBusy;
+            report.makespan = Math.max(report.makespan, partial.makespan);
+            report.detect.merge(partial.detect);
+            report.contain.merge(partial.contain);
+            report.recover.merge(partial.recover);
+            report.queueWait.merge(partial.queueWait);
+        }
+        report.partitions = partitions;
+        report.analysts = analysts;
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+    
+    static long rank(int stage, int severity, long ready) {
+        return STAGE_RANK[stage] << 56 | (long) (127 - severity) << 48 | ready;
+    }
+}
+
+// One analyst team and the hosts it owns. Pending work sits in a priority queue keyed by stage,
+// severity and ready time; follow-up stages wait in a timer queue until the previous stage finishes.
+class IncidentPartition implements Callable<IncidentReport> {
+    private static final long READY_MASK = (1L << 48) - 1;
+    
+    private final TelemetryStore store;
+    private final int[] rows;
+    private final int from;
+    private final int to;
+    private final int partitions;
+    private final long[] analystFree;
+    private final byte[] stage;
+    private final byte[] severity;
+    private final long[] compromisedAt;
+    private final long[] detectedAt;
+    private final long[] busyUntil;
+    private final long[] random;
+    private final EventQueue work = new EventQueue(1024);
+    private final EventQueue timers = new EventQueue(1024);
+    private final IncidentReport report = new IncidentReport();
+    private long open;
+    
+    IncidentPartition(TelemetryStore store, int[] rows, int from, int to, int partition, int partitions,
+                      int localHosts, int analysts, long seed) {
+        this.store = store;
+        this.rows = rows;
+        this.from = from;
+        this.to = to;
+        this.partitions = partitions;
+        this.analystFree = new long[analysts];
+        this.stage = new byte[localHosts];
+        this.severity = new byte[localHosts];
+        this.compromisedAt = new long[localHosts];
+        this.detectedAt = new long[localHosts];
+        this.busyUntil = new long[localHosts];
+        this.random = new long[localHosts];
+        Arrays.fill(compromisedAt, -1);
+        // Local host i is global host i * partitions + partition, so each host's stream is fixed by the seed.
+        for (int i = 0; i < localHosts; i++) {
+            random[i] = SimulationState.mix(seed ^ (i * (long) partitions + partition));
+        }
+    }
+    
+    @Override
+    public IncidentReport call() {
+        int next = from;
+        while (true) {
+            int analyst = 0;
+            for (int i = 1; i < analystFree.length; i++) {
+                if (analystFree[i] < analystFree[analyst]) analyst = i;
+            }
+            long free = analystFree[analyst];
+            
+            // Admit everything that happened by the time this analyst frees up, in time order.
+            while (true) {
+                long arrival = next < to ? store.times[rows[next]] : Long.MAX_VALUE;
+                long timer = !timers.isEmpty() ? timers.peekTime() : Long.MAX_VALUE;
+                if (Math.min(arrival, timer) > free) break;
+                if (timer < arrival) {
+                    timers.poll();
+                    int host = timers.polledHost();
+                    int local = host / partitions;
+                    work.add(IncidentResponseEngine.rank(timers.polledPayload(), severity[local], timers.polledTime()), host, timers.polledPayload());
+                } else {
+                    admit(rows[next++]);
+                }
+            }
+            
+            if (work.isEmpty()) {
+                long arrival = next < to ? store.times[rows[next]] : Long.MAX_VALUE;
+                long timer = !timers.isEmpty() ? timers.peekTime() : Long.MAX_VALUE;
+                long idleUntil = Math.min(arrival, timer);
+                if (idleUntil == Long.MAX_VALUE) break;
+                analystFree[analyst] = idleUntil;
+                continue;
+            }
+            
+            work.poll();
+            int host = work.polledHost();
+            int task = work.polledPayload();
+            int local = host / partitions;
+            long ready = work.polledTime() & READY_MASK;
+            long finish = free + serviceTime(local, task);
+            analystFree[analyst] = finish;
+            report.analystBusy += finish - free;
+            report.queueWait.record(free - ready);
+            report.makespan = Math.max(report.makespan, finish);
+            
+            if (task == IncidentResponseEngine.CONTAIN) {
+                report.contain.record(finish - detectedAt[local]);
+            }
+            if (task == IncidentResponseEngine.RECOVER) {
+                report.recover.record(finish - detectedAt[local]);
+                stage[local] = IncidentResponseEngine.IDLE;
+                busyUntil[local] = finish;
+                compromisedAt[local] = -1;
+                report.resolved++;
+                open--;
+            } else {
+                stage[local] = (byte) (task + 1);
+                timers.add(finish, host, task + 1);
+            }
+        }
+        return report;
+    }
+    
+    private void admit(int row) {
+        int host = store.hosts[row];
+        int local = host / partitions;
+        long time = store.times[row];
+        if (store.kinds[row] == TelemetrySink.SUCCESS) {
+            if (compromisedAt[local] < 0) compromisedAt[local] = time;
+            return;
+        }
+        
+        report.alerts++;
+        int technique = store.techniques[row];
+        if (stage[local] != IncidentResponseEngine.IDLE || time < busyUntil[local]) {
+            report.duplicates++;
+            if (technique > severity[local]) severity[local] = (byte) technique;
+            return;
+        }
+        stage[local] = IncidentResponseEngine.TRIAGE;
+        severity[local] = (byte) technique;
+        detectedAt[local] = time;
+        if (compromisedAt[local] >= 0) report.detect.record(time - compromisedAt[local]);
+        work.add(IncidentResponseEngine.rank(IncidentResponseEngine.TRIAGE, technique, time), host, IncidentResponseEngine.TRIAGE);
+        report.incidents++;
+        if (++open > report.peakOpen) report.peakOpen = open;
+    }
+    
+    // Each stage takes between half and one and a half times its nominal duration, drawn from the host's stream.
+    private long serviceTime(int local, int task) {
+        long bits = SimulationState.mix(random[local] += 0x9E3779B97F4A7C15L);
+        double fraction = 0.5 + (bits >>> 11) * 0x1.0p-53;
+        return (long) (IncidentResponseEngine.SERVICE_TIME[task] * fraction);
+    }
+}
+
+// Deduplicates DETECTION events by a configurable key before they reach incident response; all other
+// events pass straight through. Tumbling windows hold a key's alerts until the window closes and emit
+// one aggregate. Sliding windows forward the first alert at once and suppress repeats until the key
+// has been quiet for a full window. Open groups sit in an open-addressing long-keyed table and expire
+// through a hashed time wheel, so memory tracks live groups only.
+class AlertAggregator implements TelemetrySink {
+    static final int BY_HOST = 1;
+    static final int BY_RULE = 2;
+    static final int BY_TECHNIQUE = 4;
+    private static final int WHEEL_SIZE = 256;
+    private static final int EMPTY = -1;
+    
+    private final TelemetrySink downstream;
+    private final boolean sliding;
+    private final long window;
+    private final long tick;
+    private final int keyMask;
+    
+    private int[] table;
+    private int tableMask;
+    
+    private long[] entryKeys;
+    private long[] firstSeen;
+    private long[] expiry;
+    private int[] hosts;
+    private byte[] techniques;
+    private byte[] sensors;
+    private int[] counts;
+    private int[] next;
+    private int[] previous;
+    private short[] slots;
+    private int freeHead = EMPTY;
+    private int allocated;
+    
+    private final int[] wheel = new int[WHEEL_SIZE];
+    private long currentTick = -1;
+    private int live;
+    
+    long alertsIn;
+    long alertsOut;
+    int peakLive;
+    int largestGroup;
+    final LatencyHistogram addedLatency = new LatencyHistogram();
+    
+    AlertAggregator(TelemetrySink downstream, boolean sliding, long window, int keyMask) {
+        if (window <= 0) throw new IllegalArgumentException("Window must be positive");
+        this.downstream = downstream;
+        this.sliding = sliding;
+        this.window = window;
+        this.tick = Math.max(1, window / 16);
+        this.keyMask = keyMask;
+        this.table = new int[1024];
+        this.tableMask = table.length - 1;
+        Arrays.fill(table, EMPTY);
+        Arrays.fill(wheel, EMPTY);
+        resizeEntries(512);
+    }
+    
+    // Parses "host,rule,technique" style key lists.
+    static int parseKeys(String text) {
+        int mask = 0;
+        for (String part : text.toLowerCase().split("[,\\s]+")) {
+            if (part.isEmpty()) continue;
+            switch (part) {
+                case "host": mask |= BY_HOST; break;
+                case "rule": case "sensor": mask |= BY_RULE; break;
+                case "technique": mask |= BY_TECHNIQUE; break;
+                default: throw new IllegalArgumentException("Unknown aggregation key: " + part);
+            }
+        }
+        if (mask == 0) throw new IllegalArgumentException("At least one aggregation key is required");
+        return mask;
+    }
+    
+    @Override
+    public void record(long time, int host, int kind, int technique, int sensor, int peer) throws IOException {
+        advance(time);
+        if (kind != DETECTION) {
+            downstream.record(time, host, kind, technique, sensor, peer);
+            return;
+        }
+        alertsIn++;
+        
+        long key = ((keyMask & BY_HOST) != 0 ? (long) host << 16 : 0)
+                | ((keyMask & BY_RULE) != 0 ? (sensor & 0xFF) << 8 : 0)
+                | ((keyMask & BY_TECHNIQUE) != 0 ? technique & 0xFF : 0);
+        int entry = find(key);
+        if (entry != EMPTY && expiry[entry] <= time) {
+            expire(entry, time);
+            entry = EMPTY;
+        }
+        if (entry != EMPTY) {
+            counts[entry]++;
+            if (sliding) expiry[entry] = time + window;
+            return;
+        }
+        
+        entry = allocate(key);
+        firstSeen[entry] = time;
+        hosts[entry] = host;
+        techniques[entry] = (byte) technique;
+        sensors[entry] = (byte) sensor;
+        counts[entry] = 1;
+        expiry[entry] = sliding ? time + window : (time / window + 1) * window;
+        schedule(entry);
+        if (++live > peakLive) peakLive = live;
+        if (sliding) emit(entry, time);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        while (live > 0) {
+            advanceTick();
+        }
+        downstream.close();
+    }
+    
+    private void advance(long time) throws IOException {
+        long target = time / tick;
+        if (live == 0) {
+            currentTick = Math.max(currentTick, target);
+            return;
+        }
+        while (currentTick < target && live > 0) {
+            advanceTick();
+        }
+        currentTick = Math.max(currentTick, target);
+    }
+    
+    // Visits the next wheel slot. Entries whose expiry moved later (sliding refreshes) or that belong to
+    // a later rotation are rescheduled rather than expired.
+    private void advanceTick() throws IOException {
+        currentTick++;
+        long now = currentTick * tick;
+        int slot = (int) (currentTick & (WHEEL_SIZE - 1));
+        int entry = wheel[slot];
+        wheel[slot] = EMPTY;
+        while (entry != EMPTY) {
+            int following = next[entry];
+            if (expiry[entry] <= now) {
+                next[entry] = EMPTY;
+                release(entry, now);
+            } else {
+                schedule(entry);
+            }
+            entry = following;
+        }
+    }
+    
+    private void schedule(int entry) {
+        long due = Math.max(currentTick + 1, (expiry[entry] + tick - 1) / tick);
+        int slot = (int) (due & (WHEEL_SIZE - 1));
+        int head = wheel[slot];
+        next[entry] = head;
+        previous[entry] = EMPTY;
+        if (head != EMPTY) previous[head] = entry;
+        wheel[slot] = entry;
+        slots[entry] = (short) slot;
+    }
+    
+    private void expire(int entry, long now) throws IOException {
+        int before = previous[entry];
+        int after = next[entry];
+        if (before != EMPTY) {
+            next[before] = after;
+        } else {
+            wheel[slots[entry]] = after;
+        }
+        if (after != EMPTY) previous[after] = before;
+        release(entry, now);
+    }
+    
+    private void release(int entry, long now) throws IOException {
+        if (!sliding) emit(entry, now);
+        largestGroup = Math.max(largestGroup, counts[entry]);
+        remove(entryKeys[entry]);
+        next[entry] = freeHead;
+        freeHead = entry;
+        live--;
+    }
+    
+    private void emit(int entry, long now) throws IOException {
+        alertsOut++;
+        addedLatency.record(now - firstSeen[entry]);
+        downstream.record(now, hosts[entry], DETECTION, techniques[entry], sensors[entry], -1);
+    }
+    
+    private int find(long key) {
+        int index = (int) SimulationState.mix(key) & tableMask;
+        while (true) {
+            int entry = table[index];
+            if (entry == EMPTY || entryKeys[entry] == key) return entry;
+            index = (index + 1) & tableMask;
+        }
+    }
+    
+    private int allocate(long key) {
+        int entry;
+        if (freeHead != EMPTY) {
+            entry = freeHead;
+            freeHead = next[entry];
+        } else {
+            if (allocated == entryKeys.length) resizeEntries(allocated * 2);
+            entry = allocated++;
+        }
+        entryKeys[entry] = key;
+        if ((live + 1) * 2 > table.length) rehash(table.length * 2);
+        int index = (int) SimulationState.mix(key) & tableMask;
+        while (table[index] != EMPTY) {
+            index = (index + 1) & tableMask;
+        }
+        table[index] = entry;
+        return entry;
+    }
+    
+    // Linear-probing delete with backward shift, so lookups never need tombstones.
+    private void remove(long key) {
+        int index = (int) SimulationState.mix(key) & tableMask;
+        while (entryKeys[table[index]] != key) {
+            index = (index + 1) & tableMask;
+        }
+        int gap = index;
+        while (true) {
+            index = (index + 1) & tableMask;
+            int entry = table[index];
+            if (entry == EMPTY) break;
+            int home = (int) SimulationState.mix(entryKeys[entry]) & tableMask;
+            if (((index - home) & tableMask) >= ((index - gap) & tableMask)) {
+                table[gap] = entry;
+                gap = index;
+            }
+        }
+        table[gap] = EMPTY;
+    }
+    
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        tableMask = capacity - 1;
+        Arrays.fill(table, EMPTY);
+        for (int entry : old) {
+            if (entry == EMPTY) continue;
+            int index = (int) SimulationState.mix(entryKeys[entry]) & tableMask;
+            while (table[index] != EMPTY) {
+                index = (index + 1) & tableMask;
+            }
+            table[index] = entry;
+        }
+    }
+    
+    private void resizeEntries(int capacity) {
+        entryKeys = entryKeys == null ? new long[capacity] : Arrays.copyOf(entryKeys, capacity);
+        firstSeen = firstSeen == null ? new long[capacity] : Arrays.copyOf(firstSeen, capacity);
+        expiry = expiry == null ? new long[capacity] : Arrays.copyOf(expiry, capacity);
+        hosts = hosts == null ? new int[capacity] : Arrays.copyOf(hosts, capacity);
+        techniques = techniques == null ? new byte[capacity] : Arrays.copyOf(techniques, capacity);
+        sensors = sensors == null ? new byte[capacity] : Arrays.copyOf(sensors, capacity);
+        counts = counts == null ? new int[capacity] : Arrays.copyOf(counts, capacity);
+        next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        previous = previous == null ? new int[capacity] : Arrays.copyOf(previous, capacity);
+        slots = slots == null ? new short[capacity] : Arrays.copyOf(slots, capacity);
+    }
+}
+
+// Bundled subset of MITRE ATT&CK (Enterprise) used to label what each attack module does. Techniques
+// are listed per module in module order as the default tradecraft, the noisier one used at high
+// intensity and the quieter one used in stealth mode, so a run's configuration decides which
+// technique every step of a module executes.
+final class AttackCatalog {
+    private static final String[][][] TECHNIQUES = {
+        {{"T1595", "Active Scanning"}, {"T1592", "Gather Victim Host Information"}, {"T1590", "Gather Victim Network Information"}},
+        {{"T1566", "Phishing"}, {"T1190", "Exploit Public-Facing Application"}, {"T1078", "Valid Accounts"}},
+        {{"T1053", "Scheduled Task/Job"}, {"T1547", "Boot or Logon Autostart Execution"}, {"T1136", "Create Account"}},
+        {{"T1068", "Exploitation for Privilege Escalation"}, {"T1548", "Abuse Elevation Control Mechanism"}, {"T1134", "Access Token Manipulation"}},
+        {{"T1070", "Indicator Removal"}, {"T1027", "Obfuscated Files or Information"}, {"T1562", "Impair Defenses"}},
+        {{"T1110", "Brute Force"}, {"T1003", "OS Credential Dumping"}, {"T1555", "Credentials from Password Stores"}},
+        {{"T1046", "Network Service Discovery"}, {"T1087", "Account Discovery"}, {"T1082", "System Information Discovery"}},
+        {{"T1021", "Remote Services"}, {"T1570", "Lateral Tool Transfer"}, {"T1550", "Use Alternate Authentication Material"}},
+        {{"T1005", "Data from Local System"}, {"T1560", "Archive Collected Data"}, {"T1114", "Email Collection"}},
+        {{"T1041", "Exfiltration Over C2 Channel"}, {"T1048", "Exfiltration Over Alternative Protocol"}, {"T1567", "Exfiltration Over Web Service"}},
+        {{"T1071", "Application Layer Protocol"}, {"T1573", "Encrypted Channel"}, {"T1105", "Ingress Tool Transfer"}}
+    };
+    private static final int[] OFFSETS = new int[TECHNIQUES.length + 1];
+    
+    static {
+        for (int i = 0; i < TECHNIQUES.length; i++) {
+            OFFSETS[i + 1] = OFFSETS[i] + TECHNIQUES[i].length;
+        }
+    }
+    
+    private AttackCatalog() {
+    }
+    
+    static int size() {
+        return OFFSETS[TECHNIQUES.length];
+    }
+    
+    static int moduleCount() {
+        return TECHNIQUES.length;
+    }
+    
+    static int techniqueFor(int module, Config config) {
+        int[] range = range(module);
+        int variant = config.isStealthMode() ? 2 : config.getAttackIntensity() == 3 ? 1 : 0;
+        return range[0] + Math.min(variant, range[1] - range[0] - 1);
+    }
+    
+    static int[] techniques(Config config, int modules) {
+        int[] techniques = new int[modules];
+        for (int module = 0; module < modules; module++) {
+            techniques[module] = techniqueFor(module, config);
+        }
+        return techniques;
+    }
+    
+    static int[] range(int module) {
+        int index = Math.floorMod(module, TECHNIQUES.length);
+        return new int[]{OFFSETS[index], OFFSETS[index + 1]};
+    }
+    
+    static String id(int technique) {
+        return entry(technique)[0];
+    }
+    
+    static String name(int technique) {
+        return entry(technique)[1];
+    }
+    
+    private static String[] entry(int technique) {
+        for (int module = 0; module < TECHNIQUES.length; module++) {
+            if (technique < OFFSETS[module + 1]) return TECHNIQUES[module][technique - OFFSETS[module]];
+        }
+        throw new IllegalArgumentException("Unknown technique index: " + technique);
+    }
+}
+
+// Per-run coverage packed into fixed-size rows of longs: one technique bitset of what was executed,
+// followed by one technique bitset per defense module of what it detected.
+class CoverageStore {
+    final int defenses;
+    final int words;
+    final int stride;
+    private long[] bits;
+    private int runs;
+    
+    CoverageStore(int defenses) {
+        this.defenses = defenses;
+        this.words = (AttackCatalog.size() + 63) >>> 6;
+        this.stride = words * (defenses + 1);
+        this.bits = new long[stride * 64];
+    }
+    
+    public int getRuns() {
+        return runs;
+    }
+    
+    long[] bits() {
+        return bits;
+    }
+    
+    // Returns the offset of a cleared row for a new run.
+    public int addRun() {
+        if ((long) (runs + 1) * stride > Integer.MAX_VALUE - 8) throw new IllegalStateException("Coverage store is full");
+        if ((runs + 1) * stride > bits.length) bits = Arrays.copyOf(bits, (int) Math.min(Integer.MAX_VALUE - 8, (long) bits.length * 2));
+        return stride * runs++;
+    }
+    
+    public void executed(int row, int technique) {
+        bits[row + (technique >>> 6)] |= 1L << technique;
+    }
+    
+    public void detected(int row, int defense, int technique) {
+        bits[row + words * (defense + 1) + (technique >>> 6)] |= 1L << technique;
+    }
+    
+    // Sink that folds a live run straight into a new row, so coverage needs no per-event storage.
+    public TelemetrySink newRun(Config config, int modules) {
+        int row = addRun();
+        int[] techniques = AttackCatalog.techniques(config, modules);
+        return new TelemetrySink() {
+            @Override
+            public void record(long time, int host, int kind, int module, int sensor, int peer) {
+                CoverageStore.this.record(row, kind, techniques[module], sensor);
+            }
+            
+            @Override
+            public void close() {
+            }
+        };
+    }
+    
+    private void record(int row, int kind, int technique, int sensor) {
+        if (kind != TelemetrySink.SUCCESS && kind != TelemetrySink.DETECTION) return;
+        if (kind == TelemetrySink.SUCCESS) {
+            executed(row, technique);
+        } else if (sensor >= 0 && sensor < defenses) {
+            detected(row, sensor, technique);
+        }
+    }
+    
+    // Monte Carlo sweep of single-host kill chains using the same success and detection odds as the
+    // enterprise engine. Each stage gets three attempts, command and control beacons up to 48 times,
+    // and the chain stops at the first detection.
+    public void sample(Config config, List<AttackModule> attackModules, List<DefenseModule> defenseModules, int count) {
+        int stages = attackModules.size();
+        double[] success = new double[stages];
+        double[][] detection = new double[stages][defenseModules.size()];
+        for (int m = 0; m < stages; m++) {
+            success[m] = attackModules.get(m).successProbability(config);
+            for (int d = 0; d < defenseModules.size(); d++) {
+                detection[m][d] = defenseModules.get(d).detectionProbability(config, attackModules.get(m));
+            }
+        }
+        int[] techniques = AttackCatalog.techniques(config, stages);
+        long random = SimulationState.mix(config.getRandomSeed() ^ runs);
+        for (int run = 0; run < count; run++) {
+            int row = addRun();
+            chain:
+            for (int m = 0; m < stages; m++) {
+                int repeats = m == stages - 1 ? 48 : 1;
+                for (int beacon = 0; beacon < repeats; beacon++) {
+                    boolean succeeded = false;
+                    for (int attempt = 0; attempt < 3 && !succeeded; attempt++) {
+                        succeeded = uniform(random += 0x9E3779B97F4A7C15L) < success[m];
+                    }
+                    if (!succeeded) break chain;
+                    int technique = techniques[m];
+                    executed(row, technique);
+                    boolean detected = false;
+                    for (int d = 0; d < detection[m].length; d++) {
+                        if (uniform(random += 0x9E3779B97F4A7C15L) < detection[m][d]) {
+                            detected(row, d, technique);
+                            detected = true;
+                        }
+                    }
+                    if (detected) break chain;
+                }
+            }
+        }
+    }
+    
+    private static double uniform(long state) {
+        return (SimulationState.mix(state) >>> 11) * 0x1.0p-53;
+    }
+}
+
+class CoverageMatrix {
+    final String[] defenseNames;
+    final long runs;
+    final long[] executed;
+    final long[][] detected;
+    final long[] missed;
+    final long[] everExecuted;
+    final long[] everDetected;
+    long elapsedNanos;
+    
+    CoverageMatrix(String[] defenseNames, long runs, int words) {
+        this.defenseNames = defenseNames;
+        this.runs = runs;
+        this.executed = new long[AttackCatalog.size()];
+        this.detected = new long[defenseNames.length][AttackCatalog.size()];
+        this.missed = new long[AttackCatalog.size()];
+        this.everExecuted = new long[words];
+        this.everDetected = new long[words];
+    }
+    
+    // Aggregates every run in the store. Runs are split into segments counted in parallel; within a run,
+    // missed techniques are executed & ~(detected by any defense), and set bits are walked with
+    // numberOfTrailingZeros rather than testing each technique.
+    static CoverageMatrix aggregate(CoverageStore store, String[] defenseNames, ExecutorService executor)
+            throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        int runs = store.getRuns();
+        int segments = Math.max(1, Math.min(64, runs / 65536));
+        List<Callable<CoverageMatrix>> tasks = new ArrayList<>();
+        for (int s = 0; s < segments; s++) {
+            int from = (int) ((long) runs * s / segments);
+            int to = (int) ((long) runs * (s + 1) / segments);
+            tasks.add(() -> aggregate(store, defenseNames, from, to));
+        }
+        CoverageMatrix matrix = new CoverageMatrix(defenseNames, runs, store.words);
+        for (Future<CoverageMatrix> future : executor.invokeAll(tasks)) {
+            CoverageMatrix partial = future.get();
+            for (int t = 0; t < matrix.executed.length; t++) {
+                matrix.executed[t] += partial.executed[t];
+                matrix.missed[t] += partial.missed[t];
+                for (int d = 0; d < defenseNames.length; d++) {
+                    matrix.detected[d][t] += partial.detected[d][t];
+                }
+            }
+            for (int w = 0; w < store.words; w++) {
+                matrix.everExecuted[w] |= partial.everExecuted[w];
+                matrix.everDetected[w] |= partial.everDetected[w];
+            }
+        }
+        matrix.elapsedNanos = System.nanoTime() - start;
+        return matrix;
+    }
+    
+    private static CoverageMatrix aggregate(CoverageStore store, String[] defenseNames, int from, int to) {
+        CoverageMatrix matrix = new CoverageMatrix(defenseNames, to - from, store.words);
+        long[] bits = store.bits();
+        int words = store.words;
+        int defenses = Math.min(store.defenses, defenseNames.length);
+        for (int run = from; run < to; run++) {
+            int row = run * store.stride;
+            for (int w = 0; w < words; w++) {
+                long executedWord = bits[row + w];
+                long anyDetected = 0;
+                for (int d = 0; d < defenses; d++) {
+                    long detectedWord = bits[row + words * (d + 1) + w];
+                    anyDetected |= detectedWord;
+                    countBits(detectedWord, w, matrix.detected[d]);
+                }
+                countBits(executedWord, w, matrix.executed);
+                countBits(executedWord & ~anyDetected, w, matrix.missed);
+                matrix.everExecuted[w] |= executedWord;
+                matrix.everDetected[w] |= anyDetected;
+            }
+        }
+        return matrix;
+    }
+    
+    private static void countBits(long word, int index, long[] counts) {
+        while (word != 0) {
+            counts[(index << 6) + Long.numberOfTrailingZeros(word)]++;
+            word &= word - 1;
+        }
+    }
+    
+    public double rate(int defense, int technique) {
+        return executed[technique] == 0 ? Double.NaN : (double) detected[defense][technique] / executed[technique];
+    }
+    
+    public double anyRate(int technique) {
+        return executed[technique] == 0 ? Double.NaN : 1.0 - (double) missed[technique] / executed[technique];
+    }
+    
+    public int blindSpots() {
+        int blind = 0;
+        for (int w = 0; w < everExecuted.length; w++) {
+            blind += Long.bitCount(everExecuted[w] & ~everDetected[w]);
+        }
+        return blind;
+    }
+    
+    // Highest rate in the matrix; shading is scaled to it so low-coverage matrices still show contrast.
+    public double peakRate() {
+        double peak = 0;
+        for (int t = 0; t < executed.length; t++) {
+            if (executed[t] > 0) peak = Math.max(peak, anyRate(t));
+        }
+        return peak == 0 ? 1 : peak;
+    }
+    
+    public void print(PrintStream out) {
+        String shades = " .:-=+*#%@";
+        double peak = peakRate();
+        out.printf("%-7s %-40s %10s", "ID", "Technique", "Executed");
+        for (String name : defenseNames) {
+            out.printf(" %6s", abbreviate(name));
+        }
+        out.printf(" %6s%n", "Any");
+        for (int t = 0; t < executed.length; t++) {
+            out.printf("%-7s %-40s %,10d", AttackCatalog.id(t), AttackCatalog.name(t), executed[t]);
+            for (int d = 0; d < defenseNames.length; d++) {
+                out.print(cell(rate(d, t), peak, shades));
+            }
+            out.println(cell(anyRate(t), peak, shades));
+        }
+        out.printf("Shading scaled to the highest coverage rate (%.1f%%)%n", peak * 100);
+    }
+    
+    private static String cell(double rate, double peak, String shades) {
+        if (Double.isNaN(rate)) return String.format(" %6s", "-");
+        char shade = shades.charAt((int) Math.min(shades.length() - 1, Math.ceil(rate / peak * (shades.length() - 1))));
+        return String.format(" %c%4.1f%%", shade, rate * 100);
+    }
+    
+    private static String abbreviate(String name) {
+        StringBuilder initials = new StringBuilder();
+        for (String word : name.split(" ")) {
+            if (!word.isEmpty()) initials.append(word.charAt(0));
+        }
+        return initials.toString();
+    }
+    
+    public void export(Path path) throws IOException {
+        boolean html = path.toString().toLowerCase().endsWith(".html");
+        double peak = peakRate();
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            if (html) {
+                writer.write("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>ATT&amp;CK Detection Coverage</title>\n");
+                writer.write("<style>td,th{padding:4px 8px;font-family:monospace;text-align:right}td.n{text-align:left}</style></head><body>\n");
+                writer.write("<h1>ATT&amp;CK Detection Coverage</h1>\n<p>" + runs + " runs; colours scaled to the highest coverage rate</p>\n<table>\n<tr><th>ID</th><th>Technique</th><th>Executed</th>");
+                for (String name : defenseNames) {
+                    writer.write("<th>" + name + "</th>");
+                }
+                writer.write("<th>Any</th></tr>\n");
+                for (int t = 0; t < executed.length; t++) {
+                    writer.write("<tr><td class=\"n\">" + AttackCatalog.id(t) + "</td><td class=\"n\">" + AttackCatalog.name(t)
+                            + "</td><td>" + executed[t] + "</td>");
+                    for (int d = 0; d < defenseNames.length; d++) {
+                        writer.write(htmlCell(rate(d, t), peak));
+                    }
+                    writer.write(htmlCell(anyRate(t), peak) + "</tr>\n");
+                }
+                writer.write("</table>\n</body></html>\n");
+            } else {
+                writer.write("technique_id,technique,executed");
+                for (String name : defenseNames) {
+                    writer.write("," + name);
+                }
+                writer.write(",any\n");
+                for (int t = 0; t < executed.length; t++) {
+                    writer.write(AttackCatalog.id(t) + ",\"" + AttackCatalog.name(t) + "\"," + executed[t]);
+                    for (int d = 0; d < defenseNames.length; d++) {
+                        writer.write("," + csvRate(rate(d, t)));
+                    }
+                    writer.write("," + csvRate(anyRate(t)) + "\n");
+                }
+            }
+        }
+    }
+    
+    private static String csvRate(double rate) {
+        return Double.isNaN(rate) ? "" : String.format(Locale.ROOT, "%.6f", rate);
+    }
+    
+    private static String htmlCell(double rate, double peak) {
+        if (Double.isNaN(rate)) return "<td>-</td>";
+        double scaled = rate / peak;
+        int red = (int) Math.round(255 * (1 - scaled));
+        int green = (int) Math.round(200 * scaled + 55);
+        return String.format(Locale.ROOT, "<td style=\"background:rgb(%d,%d,80)\">%.1f%%</td>", red, green, rate * 100);
+    }
+}
+
+// Loopback listeners that stand in for real services during discovery load tests. Banner services
+// greet on accept, HTTP answers the first request, and the tarpit accepts but never speaks. Every
+// connection is kept until the client hangs up, so clients never see a reset before the banner.
+class StandInServices implements Closeable, Runnable {
+    static final String[][] SERVICES = {
+        {"ssh", "SSH-2.0-OpenSSH_8.9p1 Ubuntu-3ubuntu0.6\r\n"},
+        {"ftp", "220 (vsFTPd 3.0.5)\r\n"},
+        {"smtp", "220 mail.lab.local ESMTP Postfix (Ubuntu)\r\n"},
+        {"pop3", "+OK Dovecot (Ubuntu) ready.\r\n"},
+        {"http", null},
+        {"tarpit", null}
+    };
+    private static final byte[] HTTP_RESPONSE = "HTTP/1.0 200 OK\r\nServer: nginx/1.24.0\r\nContent-Length: 0\r\n\r\n"
+            .getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    
+    private final Selector selector;
+    private final List<ServerSocketChannel> listeners = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final Thread thread;
+    private final ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private final List<SelectionKey> pausedListeners = new ArrayList<>();
+    private long resumeAt;
+    private volatile boolean running = true;
+    
+    StandInServices(int closedPorts) throws IOException {
+        selector = Selector.open();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        for (int i = 0; i < SERVICES.length; i++) {
+            ServerSocketChannel listener = ServerSocketChannel.open();
+            listener.bind(new InetSocketAddress(loopback, 0), 4096);
+            listener.configureBlocking(false);
+            listener.register(selector, SelectionKey.OP_ACCEPT, i);
+            listeners.add(listener);
+            addresses.add((InetSocketAddress) listener.getLocalAddress());
+            names.add(SERVICES[i][0]);
+        }
+        // Ports that were just released are very unlikely to be reused immediately and refuse connections.
+        for (int i = 0; i < closedPorts; i++) {
+            try (ServerSocketChannel closed = ServerSocketChannel.open()) {
+                closed.bind(new InetSocketAddress(loopback, 0));
+                addresses.add((InetSocketAddress) closed.getLocalAddress());
+                names.add("closed");
+            }
+        }
+        thread = new Thread(this, "stand-in-services");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public List<InetSocketAddress> getAddresses() {
+        return addresses;
+    }
+    
+    public List<String> getNames() {
+        return names;
+    }
+    
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(100);
+                if (!pausedListeners.isEmpty() && System.nanoTime() - resumeAt >= 0) {
+                    for (SelectionKey key : pausedListeners) {
+                        if (key.isValid()) key.interestOps(SelectionKey.OP_ACCEPT);
+                    }
+                    pausedListeners.clear();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept(key);
+                    } else if (key.isReadable()) {
+                        try {
+                            read(key);
+                        } catch (IOException e) {
+                            key.channel().close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) Logger.error("Stand-in services stopped: {}", e.getMessage());
+        }
+    }
+    
+    // A failed accept (typically out of file descriptors) leaves the listener open; it stops
+    // accepting briefly so a persistent error does not spin the selector. A client that fails
+    // during setup is closed on its own.
+    private void accept(SelectionKey key) {
+        int service = (Integer) key.attachment();
+        while (true) {
+            SocketChannel client;
+            try {
+                client = ((ServerSocketChannel) key.channel()).accept();
+            } catch (IOException e) {
+                Logger.warn("Stand-in {} failed to accept a connection: {}", SERVICES[service][0], e.getMessage());
+                key.interestOps(0);
+                pausedListeners.add(key);
+                resumeAt = System.nanoTime() + 100_000_000L;
+                return;
+            }
+            if (client == null) return;
+            try {
+                client.configureBlocking(false);
+                String banner = SERVICES[service][1];
+                if (banner != null) client.write(ByteBuffer.wrap(banner.getBytes(java.nio.charset.StandardCharsets.US_ASCII)));
+                client.register(selector, SelectionKey.OP_READ, service);
+            } catch (IOException e) {
+                try {
+                    client.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+    
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel client = (SocketChannel) key.channel();
+        scratch.clear();
+        int read = client.read(scratch);
+        if (read < 0) {
+            client.close();
+        } else if (read > 0 && SERVICES[(Integer) key.attachment()][0].equals("http")) {
+            client.write(ByteBuffer.wrap(HTTP_RESPONSE));
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+}
+
+class DiscoveryReport {
+    long probes;
+    long elapsedNanos;
+    int peakInFlight;
+    double rateLimit;
+    long[] open;
+    long[] closed;
+    long[] timedOut;
+    String[] banners;
+    final LatencyHistogram latencyMicros = new LatencyHistogram();
+}
+
+// Non-blocking service discovery. One selector drives every in-flight probe: connect, send a
+// generic HTTP probe, then wait for the first line of whatever the service says. All probes share
+// the same timeout, so deadlines expire in start order from a plain FIFO.
+class ServiceDiscovery {
+    private static final byte[] PROBE = "HEAD / HTTP/1.0\r\n\r\n".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    
+    private final List<InetSocketAddress> targets;
+    private final long timeoutNanos;
+    private final double rate;
+    private final int maxInFlight;
+    
+    ServiceDiscovery(List<InetSocketAddress> targets, Config config, int maxInFlight) {
+        this.targets = targets;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getTimeout()));
+        this.rate = probeRate(config);
+        this.maxInFlight = config.isStealthMode() ? Math.max(1, maxInFlight / 8) : maxInFlight;
+    }
+    
+    // Probes per second: an order of magnitude per intensity level, cut tenfold in stealth mode.
+    static double probeRate(Config config) {
+        double rate = config.getAttackIntensity() >= 3 ? 50_000 : config.getAttackIntensity() == 2 ? 5_000 : 500;
+        return config.isStealthMode() ? rate / 10 : rate;
+    }
+    
+    private static final class Probe {
+        final int target;
+        final long start;
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        SocketChannel channel;
+        boolean done;
+        
+        Probe(int target, long start) {
+            this.target = target;
+            this.start = start;
+        }
+    }
+    
+    public DiscoveryReport run(long probes) throws IOException {
+        DiscoveryReport report = new DiscoveryReport();
+        report.open = new long[targets.size()];
+        report.closed = new long[targets.size()];
+        report.timedOut = new long[targets.size()];
+        report.banners = new String[targets.size()];
+        report.rateLimit = rate;
+        ArrayDeque<Probe> pending = new ArrayDeque<>();
+        long started = 0;
+        long completed = 0;
+        int inFlight = 0;
+        double tokens = 1;
+        long start = System.nanoTime();
+        long lastRefill = start;
+        
+        try (Selector selector = Selector.open()) {
+            while (completed < probes) {
+                long now = System.nanoTime();
+                tokens = Math.min(Math.max(1, rate / 20), tokens + (now - lastRefill) * rate / 1e9);
+                lastRefill = now;
+                while (started < probes && inFlight < maxInFlight && tokens >= 1) {
+                    tokens--;
+                    int target = (int) (started++ % targets.size());
+                    Probe probe = new Probe(target, System.nanoTime());
+                    inFlight++;
+                    try {
+                        SocketChannel channel = SocketChannel.open();
+                        probe.channel = channel;
+                        channel.configureBlocking(false);
+                        if (channel.connect(targets.get(target))) {
+                            connected(probe, null, selector);
+                        } else {
+                            channel.register(selector, SelectionKey.OP_CONNECT, probe);
+                        }
+                        pending.add(probe);
+                    } catch (IOException e) {
+                        finish(probe, report, report.closed);
+                        inFlight--;
+                        completed++;
+                    }
+                }
+                report.peakInFlight = Math.max(report.peakInFlight, inFlight);
+                
+                long waitNanos = pending.isEmpty() ? 0 : pending.peek().start + timeoutNanos - now;
+                if (started < probes && inFlight < maxInFlight) {
+                    long tokenNanos = (long) ((1 - tokens) * 1e9 / rate);
+                    waitNanos = waitNanos <= 0 ? tokenNanos : Math.min(waitNanos, tokenNanos);
+                }
+                long waitMillis = Math.max(1, Math.min(100, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+                selector.select(waitMillis);
+                
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Probe probe = (Probe) key.attachment();
+                    if (probe.done) continue;
+                    try {
+                        if (key.isConnectable()) {
+                            probe.channel.finishConnect();
+                            connected(probe, key, selector);
+                        } else if (key.isReadable() && read(probe, report)) {
+                            inFlight--;
+                            completed++;
+                        }
+                    } catch (IOException e) {
+                        finish(probe, report, report.closed);
+                        inFlight--;
+                        completed++;
+                    }
+                }
+                
+                now = System.nanoTime();
+                while (!pending.isEmpty() && (pending.peek().done || pending.peek().start + timeoutNanos <= now)) {
+                    Probe probe = pending.poll();
+                    if (probe.done) continue;
+                    finish(probe, report, report.timedOut);
+                    inFlight--;
+                    completed++;
+                }
+            }
+        }
+        report.probes = probes;
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+    
+    private void connected(Probe probe, SelectionKey key, Selector selector) throws IOException {
+        probe.channel.write(ByteBuffer.wrap(PROBE));
+        if (key == null) {
+            probe.channel.register(selector, SelectionKey.OP_READ, probe);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+    
+    // Returns true once the probe has a first line, the buffer is full, or the service hung up.
+    private boolean read(Probe probe, DiscoveryReport report) throws IOException {
+        ByteBuffer buffer = probe.buffer;
+        int read = probe.channel.read(buffer);
+        boolean line = false;
+        for (int i = buffer.position() - Math.max(read, 0); i < buffer.position(); i++) {
+            if (buffer.get(i) == '\n') line = true;
+        }
+        if (read >= 0 && !line && buffer.hasRemaining()) return false;
+        
+        if (report.banners[probe.target] == null && buffer.position() > 0) {
+            String banner = new String(buffer.array(), 0, buffer.position(), java.nio.charset.StandardCharsets.US_ASCII);
+            int end = banner.indexOf('\r') >= 0 ? banner.indexOf('\r') : banner.indexOf('\n');
+            report.banners[probe.target] = end >= 0 ? banner.substring(0, end) : banner;
+        }
+        finish(probe, report, report.open);
+        return true;
+    }
+    
+    private void finish(Probe probe, DiscoveryReport report, long[] outcome) {
+        probe.done = true;
+        outcome[probe.target]++;
+        report.latencyMicros.record((System.nanoTime() - probe.start) / 1000);
+        if (probe.channel == null) return;
+        try {
+            probe.channel.close();
+        } catch (IOException e) {
+            Logger.debug("Error closing probe: {}", e.getMessage());
+        }
+    }
+}
+
+class ShardStats {
+    long eventsProcessed;
+    long crossShardEvents;
+    long bytesSent;
+    long rounds;
+    long elapsedNanos;
+    int workers;
+    int compromised;
+    int contained;
+    long[] attempts;
+    long[] successes;
+    long[] detections;
+    
+    static ShardStats of(SimulationState state) {
+        ShardStats stats = new ShardStats();
+        stats.workers = 1;
+        stats.eventsProcessed = state.eventsProcessed;
+        stats.compromised = state.countHosts(SimulationState.COMPROMISED);
+        stats.contained = state.countHosts(SimulationState.CONTAINED);
+        stats.attempts = state.attempts.clone();
+        stats.successes = state.successes.clone();
+        stats.detections = state.detections.clone();
+        return stats;
+    }
+    
+    boolean sameOutcome(ShardStats other) {
+        return eventsProcessed == other.eventsProcessed && compromised == other.compromised
+                && contained == other.contained && Arrays.equals(attempts, other.attempts)
+                && Arrays.equals(successes, other.successes) && Arrays.equals(detections, other.detections);
+    }
+}
+
+// Wire protocol between the shard coordinator and its workers. Event batches are a base time and a
+// count followed by varint (time - base, host, payload) triples.
+final class ShardProtocol {
+    static final int SETUP = 1;
+    static final int GRANT = 2;
+    static final int FINISH = 3;
+    static final String WORKER_FLAG = "--shard-worker";
+    
+    private ShardProtocol() {
+    }
+    
+    static void writeBatch(DataOutputStream out, EventQueue events, long base) throws IOException {
+        out.writeLong(base);
+        out.writeInt(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            BinaryCodec.writeVarLong(out, events.timeAt(i) - base);
+            BinaryCodec.writeVarLong(out, events.hostAt(i));
+            BinaryCodec.writeVarLong(out, events.payloadAt(i));
+        }
+    }
+    
+    static int readBatch(DataInputStream in, EventQueue into) throws IOException {
+        long base = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            into.append(base + BinaryCodec.readVarLong(in), (int) BinaryCodec.readVarLong(in), (int) BinaryCodec.readVarLong(in));
+        }
+        return count;
+    }
+}
+
+// Runs one shard of the host population. Launched as "APTSimulator --shard-worker <port> <shard>" or as
+// a thread; either way it talks to the coordinator over a loopback socket.
+class ShardWorker implements Runnable {
+    private final int port;
+    private final int shard;
+    
+    ShardWorker(int port, int shard) {
+        this.port = port;
+        this.shard = shard;
+    }
+    
+    static void main(String[] args) {
+        new ShardWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2])).run();
+        Logger.shutdown();
+    }
+    
+    @Override
+    public void run() {
+        LiveMetrics.Campaign campaign = null;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+            out.writeInt(shard);
+            out.flush();
+            
+            if (in.readByte() != ShardProtocol.SETUP) throw new IOException("Expected setup from coordinator");
+            Config config = new Config();
+            config.setSimulationHosts(in.readInt());
+            config.setRandomSeed(in.readLong());
+            config.setAttackIntensity(in.readInt());
+            config.setStealthMode(in.readBoolean());
+            long endTime = in.readLong();
+            int shards = in.readInt();
+            List<AttackModule> attackModules = APTSimulator.createAttackModules();
+            List<DefenseModule> defenseModules = APTSimulator.createDefenseModules();
+            SimulationState state = SimulationState.create(config, attackModules.size(), defenseModules.size(),
+                    endTime, shard, shards);
+            SimulationEngine engine = new SimulationEngine(config, attackModules, defenseModules, state);
+            EventQueue outbox = new EventQueue(1024);
+            EventQueue inbox = new EventQueue(1024);
+            engine.enableSharding(outbox);
+            campaign = LiveMetrics.begin("shard " + shard + "/" + shards, state);
+            engine.enableMetrics(campaign);
+            engine.seedCampaign();
+            out.writeLong(engine.lookahead());
+            report(out, state, outbox, 0);
+            
+            while (true) {
+                byte type = in.readByte();
+                if (type == ShardProtocol.FINISH) break;
+                if (type != ShardProtocol.GRANT) throw new IOException("Unexpected message type: " + type);
+                long horizon = in.readLong();
+                ShardProtocol.readBatch(in, inbox);
+                for (int i = 0; i < inbox.size(); i++) {
+                    engine.deliver(inbox.timeAt(i), inbox.hostAt(i), inbox.payloadAt(i));
+                }
+                inbox.clear();
+                engine.runWindow(horizon);
+                report(out, state, outbox, horizon);
+            }
+            
+            out.writeLong(state.eventsProcessed);
+            out.writeInt(state.countHosts(SimulationState.COMPROMISED));
+            out.writeInt(state.countHosts(SimulationState.CONTAINED));
+            for (long[] counters : new long[][]{state.attempts, state.successes, state.detections}) {
+                for (long value : counters) {
+                    out.writeLong(value);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            Logger.error("Shard {} failed: {}", shard, e.getMessage());
+        } finally {
+            if (campaign != null) LiveMetrics.end(campaign);
+        }
+    }
+    
+    private static void report(DataOutputStream out, SimulationState state, EventQueue outbox, long base) throws IOException {
+        EventQueue queue = state.queue;
+        out.writeLong(queue.isEmpty() || queue.peekTime() > state.endTime ? Long.MAX_VALUE : queue.peekTime());
+        ShardProtocol.writeBatch(out, outbox, base);
+        out.flush();
+        outbox.clear();
+    }
+}
+
+// Partitions the enterprise across worker shards and advances them in lock-step windows. Each round
+// the coordinator takes the earliest pending event time T across all shards and in-flight messages,
+// and grants every worker the window [T, T + lookahead). No event can reach another shard sooner than
+// the lookahead, so nothing arrives inside a window it could have affected, and results match a
+// single-process run exactly.
+class ShardCoordinator {
+    private final Config config;
+    private final long endTime;
+    private final int workers;
+    private final boolean processes;
+    
+    ShardCoordinator(Config config, long endTime, int workers, boolean processes) {
+        this.config = config;
+        this.endTime = endTime;
+        this.workers = workers;
+        this.processes = processes;
+    }
+    
+    // Worker JVMs need the compiled classes on disk; the single-file source launcher has none.
+    static boolean canLaunchProcesses() {
+        URL location = APTSimulator.class.getResource("APTSimulator.class");
+        return location != null && ("file".equals(location.getProtocol()) || "jar".equals(location.getProtocol()));
+    }
+    
+    public ShardStats run() throws IOException, InterruptedException {
+        List<Process> launched = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        Socket[] sockets = new Socket[workers];
+        DataInputStream[] inputs = new DataInputStream[workers];
+        DataOutputStream[] outputs = new DataOutputStream[workers];
+        ShardStats stats = new ShardStats();
+        stats.workers = workers;
+        
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(60_000);
+            for (int shard = 0; shard < workers; shard++) {
+                if (processes) {
+                    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+                    launched.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "APTSimulator",
+                            ShardProtocol.WORKER_FLAG, String.valueOf(server.getLocalPort()), String.valueOf(shard))
+                            .inheritIO().start());
+                } else {
+                    Thread thread = new Thread(new ShardWorker(server.getLocalPort(), shard), "shard-worker-" + shard);
+                    thread.setDaemon(true);
+                    thread.start();
+                    threads.add(thread);
+                }
+            }
+            for (int i = 0; i < workers; i++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+                int shard = in.readInt();
+                sockets[shard] = socket;
+                inputs[shard] = in;
+                outputs[shard] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+            }
+            
+            for (int shard = 0; shard < workers; shard++) {
+                DataOutputStream out = outputs[shard];
+                out.writeByte(ShardProtocol.SETUP);
+                out.writeInt(config.getSimulationHosts());
+                out.writeLong(config.getRandomSeed());
+                out.writeInt(config.getAttackIntensity());
+                out.writeBoolean(config.isStealthMode());
+                out.writeLong(endTime);
+                out.writeInt(workers);
+                out.flush();
+            }
+            long lookahead = Long.MAX_VALUE;
+            for (int shard = 0; shard < workers; shard++) {
+                lookahead = Math.min(lookahead, inputs[shard].readLong());
+            }
+            
+            long start = System.nanoTime();
+            long[] nextTimes = new long[workers];
+            EventQueue routed = new EventQueue(1024);
+            EventQueue[] inboxes = new EventQueue[workers];
+            for (int shard = 0; shard < workers; shard++) {
+                inboxes[shard] = new EventQueue(1024);
+            }
+            while (true) {
+                for (int shard = 0; shard < workers; shard++) {
+                    nextTimes[shard] = inputs[shard].readLong();
+                    stats.crossShardEvents += ShardProtocol.readBatch(inputs[shard], routed);
+                }
+                for (int i = 0; i < routed.size(); i++) {
+                    inboxes[routed.hostAt(i) % workers].append(routed.timeAt(i), routed.hostAt(i), routed.payloadAt(i));
+                }
+                routed.clear();
+                
+                long earliest = Long.MAX_VALUE;
+                for (int shard = 0; shard < workers; shard++) {
+                    earliest = Math.min(earliest, nextTimes[shard]);
+                    EventQueue inbox = inboxes[shard];
+                    for (int i = 0; i < inbox.size(); i++) {
+                        earliest = Math.min(earliest, inbox.timeAt(i));
+                    }
+                }
+                if (earliest > endTime) break;
+                
+                long horizon = earliest + lookahead;
+                for (int shard = 0; shard < workers; shard++) {
+                    DataOutputStream out = outputs[shard];
+                    out.writeByte(ShardProtocol.GRANT);
+                    out.writeLong(horizon);
+                    ShardProtocol.writeBatch(out, inboxes[shard], earliest);
+                    out.flush();
+                    inboxes[shard].clear();
+                }
+                stats.rounds++;
+            }
+            
+            stats.attempts = new long[APTSimulator.createAttackModules().size()];
+            stats.successes = new long[stats.attempts.length];
+            stats.detections = new long[APTSimulator.createDefenseModules().size()];
+            for (int shard = 0; shard < workers; shard++) {
+                outputs[shard].writeByte(ShardProtocol.FINISH);
+                outputs[shard].flush();
+            }
+            for (int shard = 0; shard < workers; shard++) {
+                DataInputStream in = inputs[shard];
+                stats.eventsProcessed += in.readLong();
+                stats.compromised += in.readInt();
+                stats.contained += in.readInt();
+                for (long[] counters : new long[][]{stats.attempts, stats.successes, stats.detections}) {
+                    for (int i = 0; i < counters.length; i++) {
+                        counters[i] += in.readLong();
+                    }
+                }
+            }
+            stats.elapsedNanos = System.nanoTime() - start;
+            for (DataOutputStream out : outputs) {
+                stats.bytesSent += out.size();
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) socket.close();
+            }
+            for (Process process : launched) {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) process.destroyForcibly();
+            }
+            for (Thread thread : threads) {
+                thread.join(10_000);
+            }
+        }
+        return stats;
+    }
+}
+
+// Constant-memory streaming baselines for a population of hosts or users, all in flat primitive arrays
+// indexed by id (about 220 bytes per id). Each observation is a numeric value plus a category:
+// the value feeds an EWMA mean/variance and a small fixed-size t-digest, the category a decayed
+// space-saving frequency table. Scores are computed against the baseline before it absorbs the event,
+// and events that alert are not absorbed, so repeating an anomaly does not teach the baseline to accept it.
+class HostBaselines {
+    static final int CENTROIDS = 16;
+    static final int CATEGORIES = 8;
+    static final int WARMUP = 32;
+    private static final float ALPHA = 0.05f;
+    private static final float MAX_WEIGHT = 1 << 16;
+    
+    final int hosts;
+    private final float[] mean;
+    private final float[] variance;
+    private final int[] seen;
+    private final float[] centroidMeans;
+    private final float[] centroidWeights;
+    private final byte[] centroidCount;
+    private final float[] digestWeight;
+    private final int[] categoryKeys;
+    private final float[] categoryCounts;
+    private final float[] categoryTotal;
+    private final float[] peakScore;
+    
+    HostBaselines(int hosts) {
+        this.hosts = hosts;
+        this.mean = new float[hosts];
+        this.variance = new float[hosts];
+        this.seen = new int[hosts];
+        this.centroidMeans = new float[hosts * CENTROIDS];
+        this.centroidWeights = new float[hosts * CENTROIDS];
+        this.centroidCount = new byte[hosts];
+        this.digestWeight = new float[hosts];
+        this.categoryKeys = new int[hosts * CATEGORIES];
+        this.categoryCounts = new float[hosts * CATEGORIES];
+        this.categoryTotal = new float[hosts];
+        this.peakScore = new float[hosts];
+    }
+    
+    // Returns baselines that cover id, creating them or doubling their capacity as needed.
+    static HostBaselines covering(HostBaselines baselines, int id) {
+        if (baselines != null && id < baselines.hosts) return baselines;
+        HostBaselines grown = new HostBaselines(Math.max(1024, Integer.highestOneBit(id) << 1));
+        if (baselines != null) {
+            int n = baselines.hosts;
+            System.arraycopy(baselines.mean, 0, grown.mean, 0, n);
+            System.arraycopy(baselines.variance, 0, grown.variance, 0, n);
+            System.arraycopy(baselines.seen, 0, grown.seen, 0, n);
+            System.arraycopy(baselines.centroidMeans, 0, grown.centroidMeans, 0, n * CENTROIDS);
+            System.arraycopy(baselines.centroidWeights, 0, grown.centroidWeights, 0, n * CENTROIDS);
+            System.arraycopy(baselines.centroidCount, 0, grown.centroidCount, 0, n);
+            System.arraycopy(baselines.digestWeight, 0, grown.digestWeight, 0, n);
+            System.arraycopy(baselines.categoryKeys, 0, grown.categoryKeys, 0, n * CATEGORIES);
+            System.arraycopy(baselines.categoryCounts, 0, grown.categoryCounts, 0, n * CATEGORIES);
+            System.arraycopy(baselines.categoryTotal, 0, grown.categoryTotal, 0, n);
+            System.arraycopy(baselines.peakScore, 0, grown.peakScore, 0, n);
+        }
+        return grown;
+    }
+    
+    public long memoryBytes() {
+        return (long) hosts * (4 * 6 + 1 + CENTROIDS * 8 + CATEGORIES * 8);
+    }
+    
+    public float peakScore(int host) {
+        return peakScore[host];
+    }
+    
+    // Returns an anomaly score where 1.0 marks the alert threshold: the largest of the EWMA z-score
+    // over 4, the upper-tail surprise -log10(1 - cdf) over 5, and the category rarity -log10(freq) over 3.
+    public double observe(int host, double value, int category) {
+        double score = 0;
+        if (seen[host] >= WARMUP) {
+            double deviation = Math.abs(value - mean[host]) / Math.sqrt(variance[host] + 1e-6);
+            double tail = -Math.log10(Math.max(1e-9, 1 - cdf(host, value)));
+            double rarity = -Math.log10((frequency(host, category) + 1) / (categoryTotal[host] + CATEGORIES));
+            score = Math.max(deviation / 4, Math.max(tail / 5, rarity / 3));
+            if (score > peakScore[host]) peakScore[host] = (float) score;
+            if (score >= 1) return score;
+        }
+        seen[host]++;
+        updateMoments(host, value);
+        updateDigest(host, (float) value);
+        updateCategories(host, category);
+        return score;
+    }
+    
+    private void updateMoments(int host, double value) {
+        if (seen[host] == 1) {
+            mean[host] = (float) value;
+            return;
+        }
+        double delta = value - mean[host];
+        mean[host] += ALPHA * delta;
+        variance[host] = (float) ((1 - ALPHA) * (variance[host] + ALPHA * delta * delta));
+    }
+    
+    double cdf(int host, double value) {
+        int base = host * CENTROIDS;
+        int count = centroidCount[host];
+        double total = digestWeight[host];
+        if (count == 0 || total == 0) return 0.5;
+        if (value < centroidMeans[base]) return 0.5 / total;
+        if (value >= centroidMeans[base + count - 1]) return 1 - 0.5 / total;
+        double cumulative = centroidWeights[base] / 2;
+        for (int i = 1; i < count; i++) {
+            float left = centroidMeans[base + i - 1];
+            float right = centroidMeans[base + i];
+            double span = (centroidWeights[base + i - 1] + centroidWeights[base + i]) / 2;
+            if (value < right) {
+                return (cumulative + span * (value - left) / Math.max(1e-9, right - left)) / total;
+            }
+            cumulative += span;
+        }
+        return 1 - 0.5 / total;
+    }
+    
+    // Fixed-capacity merging digest: a new value joins its nearest centroid when the t-digest size bound
+    // 4 * W * q * (1 - q) / CENTROIDS allows, otherwise it becomes a centroid of its own after the
+    // closest adjacent pair is merged to make room. Weights halve at MAX_WEIGHT so the digest keeps adapting.
+    private void updateDigest(int host, float value) {
+        int base = host * CENTROIDS;
+        int count = centroidCount[host];
+        float[] means = centroidMeans;
+        float[] weights = centroidWeights;
+        if (digestWeight[host] >= MAX_WEIGHT) {
+            for (int i = 0; i < count; i++) {
+                weights[base + i] *= 0.5f;
+            }
+            digestWeight[host] *= 0.5f;
+        }
+        float total = digestWeight[host] + 1;
+        digestWeight[host] = total;
+        
+        int position = 0;
+        while (position < count && means[base + position] < value) position++;
+        if (count > 0) {
+            int nearest = position == count ? count - 1 : position == 0 ? 0
+                    : value - means[base + position - 1] <= means[base + position] - value ? position - 1 : position;
+            double quantile = cdf(host, means[base + nearest]);
+            double limit = Math.max(1, 4 * total * quantile * (1 - quantile) / CENTROIDS);
+            if (weights[base + nearest] + 1 <= limit || count == CENTROIDS && value == means[base + nearest]) {
+                float weight = weights[base + nearest] + 1;
+                means[base + nearest] += (value - means[base + nearest]) / weight;
+                weights[base + nearest] = weight;
+                return;
+            }
+        }
+        
+        if (count == CENTROIDS) {
+            int pair = 0;
+            float gap = Float.MAX_VALUE;
+            for (int i = 0; i + 1 < count; i++) {
+                float distance = means[base + i + 1] - means[base + i];
+                if (distance < gap) {
+                    gap = distance;
+                    pair = i;
+                }
+            }
+            float weight = weights[base + pair] + weights[base + pair + 1];
+            means[base + pair] = (means[base + pair] * weights[base + pair] + means[base + pair + 1] * weights[base + pair + 1]) / weight;
+            weights[base + pair] = weight;
+            System.arraycopy(means, base + pair + 2, means, base + pair + 1, count - pair - 2);
+            System.arraycopy(weights, base + pair + 2, weights, base + pair + 1, count - pair - 2);
+            count--;
+            if (position > pair + 1) position--;
+        }
+        System.arraycopy(means, base + position, means, base + position + 1, count - position);
+        System.arraycopy(weights, base + position, weights, base + position + 1, count - position);
+        means[base + position] = value;
+        weights[base + position] = 1;
+        centroidCount[host] = (byte) (count + 1);
+    }
+    
+    private float frequency(int host, int category) {
+        int base = host * CATEGORIES;
+        int key = category + 1;
+        for (int i = 0; i < CATEGORIES; i++) {
+            if (categoryKeys[base + i] == key) return categoryCounts[base + i];
+        }
+        return 0;
+    }
+    
+    // Space-saving: an unseen category evicts the least frequent slot. Counts decay by 1/256 per event
+    // so a host's habits can change without the table filling with stale heavy hitters.
+    private void updateCategories(int host, int category) {
+        int base = host * CATEGORIES;
+        int key = category + 1;
+        int minimum = base;
+        for (int i = base; i < base + CATEGORIES; i++) {
+            categoryCounts[i] *= 255f / 256f;
+            if (categoryKeys[i] == key) {
+                categoryCounts[i] += 1;
+                categoryTotal[host] = categoryTotal[host] * (255f / 256f) + 1;
+                for (int j = i + 1; j < base + CATEGORIES; j++) {
+                    categoryCounts[j] *= 255f / 256f;
+                }
+                return;
+            }
+            if (categoryCounts[i] < categoryCounts[minimum]) minimum = i;
+        }
+        categoryKeys[minimum] = key;
+        categoryCounts[minimum] = 1;
+        categoryTotal[host] = categoryTotal[host] * (255f / 256f) + 1;
+    }
+}
+
+class BaselineReport {
+    long events;
+    long scored;
+    long injected;
+    long flagged;
+    long truePositives;
+    long elapsedNanos;
+    long memoryBytes;
+    int threads;
+}
+
+// Drives synthetic flow and process streams through the network and endpoint baselines. Hosts and users
+// are split across threads by id, so every baseline is only ever touched by one thread. Each user has a
+// stable profile (typical transfer size, a handful of ports and process images) and mostly works on its
+// own host; one event in eight is another user of the same shard roaming onto it. One event in ten
+// thousand is an injected anomaly: a much larger transfer to 4444 or a heavy unknown process.
+class BaselineBenchmark {
+    private static final int[] COMMON_PORTS = {80, 443, 22, 53, 445, 3389, 8080, 25};
+    private static final long ANOMALY_ODDS = 10_000;
+    
+    static BaselineReport run(NetworkMonitoringModule network, EndpointProtectionModule endpoint, int hosts,
+                              long events, long seed, ExecutorService executor) throws InterruptedException, ExecutionException {
+        long memory = network.flowBaselines(hosts, hosts) + endpoint.processBaselines(hosts, hosts);
+        int threads = Math.max(1, Math.min(hosts, Runtime.getRuntime().availableProcessors()));
+        List<Callable<BaselineReport>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int shard = t;
+            long share = events / threads + (t < events % threads ? 1 : 0);
+            tasks.add(() -> stream(network, endpoint, hosts, shard, threads, share, seed));
+        }
+        
+        long start = System.nanoTime();
+        BaselineReport report = new BaselineReport();
+        for (Future<BaselineReport> future : executor.invokeAll(tasks)) {
+            BaselineReport partial = future.get();
+            report.events += partial.events;
+            report.scored += partial.scored;
+            report.injected += partial.injected;
+            report.flagged += partial.flagged;
+            report.truePositives += partial.truePositives;
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        report.memoryBytes = memory;
+        report.threads = threads;
+        return report;
+    }
+    
+    private static BaselineReport stream(NetworkMonitoringModule network, EndpointProtectionModule endpoint,
+                                         int hosts, int shard, int shards, long events, long seed) {
+        BaselineReport report = new BaselineReport();
+        int owned = (hosts - shard + shards - 1) / shards;
+        long random = SimulationState.mix(seed ^ shard);
+        for (long i = 0; i < events; i++) {
+            long bits = SimulationState.mix(random += 0x9E3779B97F4A7C15L);
+            int host = (int) ((bits >>> 32) % owned) * shards + shard;
+            long roam = SimulationState.mix(~bits);
+            int user = (roam & 7) == 0 ? (int) ((roam >>> 32) % owned) * shards + shard : host;
+            boolean anomaly = (bits & 0xFFFFFFFFL) % ANOMALY_ODDS == 0;
+            
+            double score = observe(network, endpoint, seed, host, user, bits, anomaly, (bits & 0x700) < 0x500);
+            report.events++;
+            if (score > 0) {
+                report.scored++;
+                if (anomaly) report.injected++;
+                if (score >= 1) {
+                    report.flagged++;
+                    if (anomaly) report.truePositives++;
+                }
+            }
+        }
+        return report;
+    }
+    
+    // Scores one flow or process by user on host, drawn from the user's profile with randomness from bits.
+    static double observe(NetworkMonitoringModule network, EndpointProtectionModule endpoint, long seed,
+                          int host, int user, long bits, boolean anomaly, boolean flow) {
+        long profile = SimulationState.mix(seed + user);
+        long noise = SimulationState.mix(bits);
+        double normal = ((noise & 0xFFFF) + (noise >>> 16 & 0xFFFF) + (noise >>> 32 & 0xFFFF) + (noise >>> 48)) / 65536.0 - 2;
+        int habit = (int) ((bits >>> 8) & 3);
+        if (flow) {
+            double size = 6 + (profile & 7) + normal * 0.8 + (anomaly ? 6 : 0);
+            int port = anomaly ? 4444 : COMMON_PORTS[(int) (profile >>> (8 + habit * 3)) & 7];
+            return network.scoreFlow(host, user, (long) Math.exp(size), port);
+        }
+        double cpu = 3 + (profile >>> 20 & 3) + normal * 0.8 + (anomaly ? 6 : 0);
+        int image = anomaly ? 9999 : (int) (profile >>> (30 + habit * 4) & 15);
+        return endpoint.scoreProcess(host, user, (long) Math.exp(cpu), image);
+    }
+}
+
+// Scores a live enterprise run against the network and endpoint baselines. A host's first event brings
+// it a warm-up's worth of its owner's ordinary flows and processes, every later event one more, and
+// each successful attack step is scored as the action it implies: an outsized flow for network-facing
+// stages, an unfamiliar heavy process otherwise, under the account of the host's owner.
+class BehaviorMonitor implements TelemetrySink {
+    private final NetworkMonitoringModule network;
+    private final EndpointProtectionModule endpoint;
+    private final boolean[] networkStage;
+    private final long seed;
+    private final BitSet warmed = new BitSet();
+    private long random;
+    long steps;
+    long flaggedSteps;
+    long background;
+    long falseAlarms;
+    
+    BehaviorMonitor(NetworkMonitoringModule network, EndpointProtectionModule endpoint,
+                    List<AttackModule> attackModules, long seed) {
+        this.network = network;
+        this.endpoint = endpoint;
+        this.networkStage = new boolean[attackModules.size()];
+        for (int stage = 0; stage < networkStage.length; stage++) {
+            AttackModule module = attackModules.get(stage);
+            networkStage[stage] = module instanceof ReconnaissanceModule || module instanceof InitialAccessModule
+                    || module instanceof LateralMovementModule || module instanceof ExfiltrationModule
+                    || module instanceof CommandAndControlModule;
+        }
+        this.seed = seed;
+        this.random = SimulationState.mix(seed);
+    }
+    
+    @Override
+    public void record(long time, int host, int kind, int technique, int sensor, int peer) {
+        if (kind != ATTEMPT && kind != SUCCESS) return;
+        if (!warmed.get(host)) {
+            warmed.set(host);
+            for (int i = 0; i < HostBaselines.WARMUP; i++) {
+                ordinary(host, true);
+                ordinary(host, false);
+            }
+        }
+        long bits = SimulationState.mix(random += 0x9E3779B97F4A7C15L);
+        ordinary(host, (bits & 0x700) < 0x500);
+        if (kind == SUCCESS) {
+            steps++;
+            bits = SimulationState.mix(random += 0x9E3779B97F4A7C15L);
+            if (BaselineBenchmark.observe(network, endpoint, seed, host, host, bits, true, networkStage[technique]) >= 1) {
+                flaggedSteps++;
+            }
+        }
+    }
+    
+    private void ordinary(int host, boolean flow) {
+        long bits = SimulationState.mix(random += 0x9E3779B97F4A7C15L);
+        background++;
+        if (BaselineBenchmark.observe(network, endpoint, seed, host, host, bits, false, flow) >= 1) falseAlarms++;
+    }
+    
+    @Override
+    public void close() {
+    }
+}
+
+// Generated user directory stored column-wise: names are derived from the account index rather than
+// stored, group membership is a 16-bit mask, and each account keeps an 8-byte salt plus a truncated
+// SHA-256 of its synthetic password. One million accounts take about 27 MB.
+class IdentityDirectory {
+    static final String[] GROUPS = {
+        "Domain Users", "Domain Admins", "IT", "HR", "Finance", "Engineering", "Sales", "Marketing",
+        "Legal", "Support", "VPN Users", "Remote Desktop Users", "Service Accounts", "Contractors",
+        "Executives", "Backup Operators"
+    };
+    static final String[] COMMON_PASSWORDS = {
+        "123456", "password", "Password1", "Welcome1", "qwerty123", "letmein", "Winter2024!", "Summer2024!",
+        "Spring2025!", "Autumn2024!", "Company123", "Passw0rd!", "iloveyou", "admin123", "Changeme1", "football"
+    };
+    static final int ENABLED = 1;
+    static final int PRIVILEGED = 2;
+    static final int SERVICE = 4;
+    static final int LOCKED = 8;
+    static final int LOCKOUT_THRESHOLD = 10;
+    private static final String[] FIRST = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda",
+            "David", "Elizabeth", "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica"};
+    private static final String[] LAST = {"smith", "johnson", "williams", "brown", "jones", "garcia", "miller", "davis",
+            "rodriguez", "martinez", "hernandez", "lopez", "gonzalez", "wilson", "anderson", "thomas", "taylor", "moore",
+            "jackson", "martin", "lee", "perez", "thompson", "white", "harris", "sanchez", "clark", "ramirez", "lewis",
+            "robinson", "walker", "young"};
+    private static final int RECORD = 24;
+    
+    final int accounts;
+    final long seed;
+    private final byte[] flags;
+    private final short[] groups;
+    private final byte[] failures;
+    private final byte[] hashes;
+    
+    private IdentityDirectory(int accounts, long seed) {
+        this.accounts = accounts;
+        this.seed = seed;
+        this.flags = new byte[accounts];
+        this.groups = new short[accounts];
+        this.failures = new byte[accounts];
+        this.hashes = new byte[accounts * RECORD];
+    }
+    
+    static IdentityDirectory generate(int accounts, long seed, ExecutorService executor)
+            throws InterruptedException, ExecutionException {
+        IdentityDirectory directory = new IdentityDirectory(accounts, seed);
+        int chunks = Math.max(1, Math.min(64, accounts / 16384));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int c = 0; c < chunks; c++) {
+            int from = (int) ((long) accounts * c / chunks);
+            int to = (int) ((long) accounts * (c + 1) / chunks);
+            tasks.add(() -> {
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                for (int user = from; user < to; user++) {
+                    directory.populate(user, sha256);
+                }
+                return null;
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+        return directory;
+    }
+    
+    private void populate(int user, MessageDigest sha256) {
+        long profile = SimulationState.mix(seed ^ (user * 0xD1B54A32D192ED03L));
+        int flag = ENABLED;
+        int mask = 1 | 1 << (2 + (int) (profile & 7));
+        if ((profile >>> 8) % 1000 == 0) {
+            flag |= PRIVILEGED;
+            mask |= 1 << 1;
+        }
+        if ((profile >>> 20) % 200 == 0) {
+            flag |= SERVICE;
+            mask |= 1 << 12;
+        }
+        if ((profile >>> 32 & 3) == 0) mask |= 1 << 10;
+        flags[user] = (byte) flag;
+        groups[user] = (short) mask;
+        
+        int offset = user * RECORD;
+        long salt = SimulationState.mix(profile);
+        for (int i = 0; i < 8; i++) {
+            hashes[offset + i] = (byte) (salt >>> (i * 8));
+        }
+        byte[] digest = digest(sha256, hashes, offset, password(user));
+        System.arraycopy(digest, 0, hashes, offset + 8, 16);
+    }
+    
+    private static byte[] digest(MessageDigest sha256, byte[] records, int offset, String password) {
+        sha256.reset();
+        sha256.update(records, offset, 8);
+        sha256.update(password.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        return sha256.digest();
+    }
+    
+    // Ground truth for the synthetic population: about 2% of accounts use a common password.
+    String password(int user) {
+        long bits = SimulationState.mix(seed ^ (user * 0x9E3779B97F4A7C15L) ^ 0x5EC2E7L);
+        if (bits % 50 == 0) return COMMON_PASSWORDS[(int) ((bits >>> 16) % COMMON_PASSWORDS.length)];
+        return Long.toString(bits >>> 4, 36);
+    }
+    
+    String username(int user) {
+        return Character.toLowerCase(FIRST[user % FIRST.length].charAt(0)) + LAST[user / FIRST.length % LAST.length]
+                + (user / (FIRST.length * LAST.length));
+    }
+    
+    List<String> groupNames(int user) {
+        List<String> names = new ArrayList<>();
+        for (int g = 0; g < GROUPS.length; g++) {
+            if ((groups[user] & (1 << g)) != 0) names.add(GROUPS[g]);
+        }
+        return names;
+    }
+    
+    boolean isPrivileged(int user) {
+        return (flags[user] & PRIVILEGED) != 0;
+    }
+    
+    boolean isLocked(int user) {
+        return (flags[user] & LOCKED) != 0;
+    }
+    
+    int firstPrivileged() {
+        for (int user = 0; user < accounts; user++) {
+            if (isPrivileged(user)) return user;
+        }
+        return 0;
+    }
+    
+    // Verifies a guess against the stored record and applies the lockout policy. Not thread-safe.
+    boolean authenticate(int user, String password, MessageDigest sha256) {
+        if ((flags[user] & (ENABLED | LOCKED)) != ENABLED) return false;
+        byte[] digest = digest(sha256, hashes, user * RECORD, password);
+        boolean match = true;
+        for (int i = 0; i < 16; i++) {
+            match &= digest[i] == hashes[user * RECORD + 8 + i];
+        }
+        if (match) {
+            failures[user] = 0;
+        } else if (++failures[user] >= LOCKOUT_THRESHOLD) {
+            flags[user] |= LOCKED;
+        }
+        return match;
+    }
+    
+    long memoryBytes() {
+        return (long) accounts * (1 + 2 + 1 + RECORD);
+    }
+}
+
+interface AuthListener {
+    void attempt(long time, int source, int user, boolean success);
+}
+
+// Simulated authentication traffic: rates are attempts per simulated second, 0 disables a stream.
+// Attacks run inside their own windows so detection latency can be measured from a known start.
+class CredentialCampaign {
+    static final int SPRAY = 0;
+    static final int STUFFING = 1;
+    static final int BRUTE_FORCE = 2;
+    static final String[] KIND_NAMES = {"Password spray", "Credential stuffing", "Brute force"};
+    static final int SPRAY_SOURCE = 0xCB007142;
+    static final int BRUTE_FORCE_SOURCE = 0xC000024D;
+    static final int BOTNET_BASE = 0x64400000;
+    static final int BOTNET_SIZE = 10_000;
+    // An hour at this rate is 36M attempts per stream, already minutes of replay.
+    static final double MAX_RATE = 10_000;
+    
+    long duration = 60 * SimulationEngine.MINUTE;
+    double backgroundRate = 20;
+    final double[] rates = {5, 20, 2};
+    final long[] starts = {10 * SimulationEngine.MINUTE, 20 * SimulationEngine.MINUTE, 30 * SimulationEngine.MINUTE};
+    final long[] ends = {40 * SimulationEngine.MINUTE, 50 * SimulationEngine.MINUTE, 55 * SimulationEngine.MINUTE};
+    int bruteForceTarget;
+    final long[] attempts = new long[3];
+    final long[] compromised = new long[3];
+    long backgroundAttempts;
+}
+
+// Sliding-window credential attack detection over a stream of authentication attempts. Windows are
+// ten one-minute sub-windows recycled by epoch. Spray: distinct users failed per source, from a
+// 64-register HyperLogLog per source per sub-window. Brute force: failures per user, from a
+// count-min sketch per sub-window. Stuffing: distinct failing sources across the whole directory,
+// from a 1024-register HyperLogLog, compared with its own pre-attack baseline.
+class CredentialAttackDetector implements AuthListener {
+    static final int SPRAY_THRESHOLD = 30;
+    static final int BRUTE_FORCE_THRESHOLD = 20;
+    private static final int SLOTS = 10;
+    private static final long SLOT_WIDTH = SimulationEngine.MINUTE;
+    private static final int SOURCE_REGISTERS = 64;
+    private static final int GLOBAL_REGISTERS = 1024;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 8192;
+    private static final int STUFFING_CHECK_INTERVAL = 64;
+    
+    private int[] sourceKeys = new int[1024];
+    private int[] sourceSlots = new int[1024];
+    private byte[] sourceRegisters = new byte[512 * SLOTS * SOURCE_REGISTERS];
+    private long[] sourceEpochs = new long[512 * SLOTS];
+    private long[] sourceAlerted = new long[512];
+    private int sources;
+    
+    private final int[] failureSketch = new int[SLOTS * SKETCH_DEPTH * SKETCH_WIDTH];
+    private final long[] sketchEpochs = new long[SLOTS];
+    private final byte[] globalRegisters = new byte[SLOTS * GLOBAL_REGISTERS];
+    private final long[] globalEpochs = new long[SLOTS];
+    private final byte[] globalHistory = new byte[GLOBAL_REGISTERS];
+    private final byte[] globalMerged = new byte[GLOBAL_REGISTERS];
+    private final Map<Integer, Long> alertedUsers = new HashMap<>();
+    private long currentEpoch = -1;
+    private double stuffingBaseline = -1;
+    private long stuffingAlerted = Long.MIN_VALUE / 2;
+    private long failures;
+    
+    final long[] firstAlert = {-1, -1, -1};
+    final long[] alerts = new long[3];
+    final long[] falseAlerts = new long[3];
+    private final CredentialCampaign campaign;
+    long events;
+    
+    CredentialAttackDetector(CredentialCampaign campaign) {
+        this.campaign = campaign;
+        Arrays.fill(sourceSlots, -1);
+    }
+    
+    @Override
+    public void attempt(long time, int source, int user, boolean success) {
+        events++;
+        long epoch = time / SLOT_WIDTH;
+        if (epoch != currentEpoch) rollover(epoch);
+        if (success) return;
+        int slot = (int) (epoch % SLOTS);
+        failures++;
+        
+        long userHash = SimulationState.mix(user + 0x632BE59BD9B4E019L);
+        int base = slot * SKETCH_DEPTH * SKETCH_WIDTH;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            failureSketch[base + row * SKETCH_WIDTH + (int) ((userHash >>> (row * 16)) & (SKETCH_WIDTH - 1))]++;
+        }
+        if (estimateFailures(userHash) >= BRUTE_FORCE_THRESHOLD) {
+            Long last = alertedUsers.get(user);
+            if (last == null || time - last >= SLOTS * SLOT_WIDTH) {
+                alertedUsers.put(user, time);
+                raise(CredentialCampaign.BRUTE_FORCE, time, user != campaign.bruteForceTarget);
+            }
+        }
+        
+        long sourceHash = SimulationState.mix(source * 0x9E3779B97F4A7C15L);
+        addToHll(globalRegisters, slot * GLOBAL_REGISTERS, GLOBAL_REGISTERS, sourceHash);
+        if ((failures & (STUFFING_CHECK_INTERVAL - 1)) == 0) checkStuffing(time, slot);
+        
+        int index = sourceIndex(source);
+        int row = index * SLOTS + slot;
+        if (sourceEpochs[row] != epoch) {
+            sourceEpochs[row] = epoch;
+            Arrays.fill(sourceRegisters, row * SOURCE_REGISTERS, (row + 1) * SOURCE_REGISTERS, (byte) 0);
+        }
+        if (addToHll(sourceRegisters, row * SOURCE_REGISTERS, SOURCE_REGISTERS, userHash)
+                && time - sourceAlerted[index] >= SLOTS * SLOT_WIDTH
+                && estimateSource(index, epoch) >= SPRAY_THRESHOLD) {
+            sourceAlerted[index] = time;
+            raise(CredentialCampaign.SPRAY, time, source != CredentialCampaign.SPRAY_SOURCE);
+        }
+    }
+    
+    private void raise(int kind, long time, boolean spurious) {
+        alerts[kind]++;
+        if (spurious) {
+            falseAlerts[kind]++;
+        } else if (firstAlert[kind] < 0) {
+            firstAlert[kind] = time;
+        }
+    }
+    
+    // On each new minute the oldest sub-window is cleared, the remaining ones are folded into the
+    // stuffing history and, while no surge is under way, the baseline follows the history.
+    private void rollover(long epoch) {
+        currentEpoch = epoch;
+        int slot = (int) (epoch % SLOTS);
+        if (sketchEpochs[slot] != epoch) {
+            sketchEpochs[slot] = epoch;
+            Arrays.fill(failureSketch, slot * SKETCH_DEPTH * SKETCH_WIDTH, (slot + 1) * SKETCH_DEPTH * SKETCH_WIDTH, 0);
+        }
+        
+        Arrays.fill(globalHistory, (byte) 0);
+        for (int s = 0; s < SLOTS; s++) {
+            if (s == slot || epoch - globalEpochs[s] >= SLOTS) continue;
+            for (int r = 0; r < GLOBAL_REGISTERS; r++) {
+                globalHistory[r] = (byte) Math.max(globalHistory[r], globalRegisters[s * GLOBAL_REGISTERS + r]);
+            }
+        }
+        globalEpochs[slot] = epoch;
+        Arrays.fill(globalRegisters, slot * GLOBAL_REGISTERS, (slot + 1) * GLOBAL_REGISTERS, (byte) 0);
+        
+        double distinct = estimate(globalHistory, 0, GLOBAL_REGISTERS);
+        if (epoch >= SLOTS - 1 && (stuffingBaseline < 0 || distinct <= stuffingThreshold())) {
+            stuffingBaseline = stuffingBaseline < 0 ? distinct : 0.9 * stuffingBaseline + 0.1 * distinct;
+        }
+    }
+    
+    private void checkStuffing(long time, int slot) {
+        if (stuffingBaseline < 0 || time - stuffingAlerted < SLOTS * SLOT_WIDTH) return;
+        byte[] merged = globalMerged;
+        int offset = slot * GLOBAL_REGISTERS;
+        for (int r = 0; r < GLOBAL_REGISTERS; r++) {
+            merged[r] = (byte) Math.max(globalHistory[r], globalRegisters[offset + r]);
+        }
+        if (estimate(merged, 0, GLOBAL_REGISTERS) > stuffingThreshold()) {
+            stuffingAlerted = time;
+            raise(CredentialCampaign.STUFFING, time, campaign.rates[CredentialCampaign.STUFFING] <= 0
+                    || time < campaign.starts[CredentialCampaign.STUFFING]);
+        }
+    }
+    
+    private double stuffingThreshold() {
+        return 1.5 * stuffingBaseline + 100;
+    }
+    
+    private int estimateFailures(long userHash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            int column = (int) ((userHash >>> (row * 16)) & (SKETCH_WIDTH - 1));
+            int sum = 0;
+            for (int s = 0; s < SLOTS; s++) {
+                if (currentEpoch - sketchEpochs[s] < SLOTS) sum += failureSketch[(s * SKETCH_DEPTH + row) * SKETCH_WIDTH + column];
+            }
+            estimate = Math.min(estimate, sum);
+        }
+        return estimate;
+    }
+    
+    private double estimateSource(int index, long epoch) {
+        byte[] merged = new byte[SOURCE_REGISTERS];
+        for (int s = 0; s < SLOTS; s++) {
+            int row = index * SLOTS + s;
+            if (epoch - sourceEpochs[row] >= SLOTS) continue;
+            for (int r = 0; r < SOURCE_REGISTERS; r++) {
+                merged[r] = (byte) Math.max(merged[r], sourceRegisters[row * SOURCE_REGISTERS + r]);
+            }
+        }
+        return estimate(merged, 0, SOURCE_REGISTERS);
+    }
+    
+    // Returns true when the register changed, i.e. the item may be new to the sketch.
+    private static boolean addToHll(byte[] registers, int offset, int count, long hash) {
+        int bits = Integer.numberOfTrailingZeros(count);
+        int register = (int) (hash >>> (64 - bits));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << bits) | (1L << (bits - 1))) + 1);
+        if (registers[offset + register] >= rank) return false;
+        registers[offset + register] = rank;
+        return true;
+    }
+    
+    private static double estimate(byte[] registers, int offset, int count) {
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < count; i++) {
+            sum += 1.0 / (1L << registers[offset + i]);
+            if (registers[offset + i] == 0) zeros++;
+        }
+        double alpha = count == 64 ? 0.709 : 0.7213 / (1 + 1.079 / count);
+        double raw = alpha * count * count / sum;
+        return raw <= 2.5 * count && zeros > 0 ? count * Math.log((double) count / zeros) : raw;
+    }
+    
+    // Open-addressing map from source address to its row of sub-window registers. When the table fills,
+    // sources idle for a whole window are dropped before it is allowed to grow.
+    private int sourceIndex(int source) {
+        int mask = sourceKeys.length - 1;
+        int index = (int) SimulationState.mix(source) & mask;
+        while (sourceSlots[index] >= 0) {
+            if (sourceKeys[index] == source) return sourceSlots[index];
+            index = (index + 1) & mask;
+        }
+        if ((sources + 1) * 2 > sourceKeys.length) {
+            compactSources();
+            return sourceIndex(source);
+        }
+        if (sources * SLOTS >= sourceEpochs.length) {
+            int capacity = sourceEpochs.length / SLOTS * 2;
+            sourceRegisters = Arrays.copyOf(sourceRegisters, capacity * SLOTS * SOURCE_REGISTERS);
+            sourceEpochs = Arrays.copyOf(sourceEpochs, capacity * SLOTS);
+            sourceAlerted = Arrays.copyOf(sourceAlerted, capacity);
+        }
+        int row = sources++;
+        Arrays.fill(sourceEpochs, row * SLOTS, (row + 1) * SLOTS, Long.MIN_VALUE / 2);
+        Arrays.fill(sourceRegisters, row * SLOTS * SOURCE_REGISTERS, (row + 1) * SLOTS * SOURCE_REGISTERS, (byte) 0);
+        sourceAlerted[row] = Long.MIN_VALUE / 2;
+        sourceKeys[index] = source;
+        sourceSlots[index] = row;
+        return row;
+    }
+    
+    private void compactSources() {
+        int[] keys = sourceKeys;
+        int[] slots = sourceSlots;
+        int live = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (slots[i] >= 0 && isActive(slots[i])) live++;
+        }
+        int capacity = keys.length;
+        while ((live + 1) * 4 > capacity) capacity *= 2;
+        sourceKeys = new int[capacity];
+        sourceSlots = new int[capacity];
+        Arrays.fill(sourceSlots, -1);
+        byte[] registers = new byte[Math.max(512, live * 2) * SLOTS * SOURCE_REGISTERS];
+        long[] epochs = new long[Math.max(512, live * 2) * SLOTS];
+        long[] alerted = new long[Math.max(512, live * 2)];
+        int next = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int row = slots[i];
+            if (row < 0 || !isActive(row)) continue;
+            System.arraycopy(sourceRegisters, row * SLOTS * SOURCE_REGISTERS, registers, next * SLOTS * SOURCE_REGISTERS, SLOTS * SOURCE_REGISTERS);
+            System.arraycopy(sourceEpochs, row * SLOTS, epochs, next * SLOTS, SLOTS);
+            alerted[next] = sourceAlerted[row];
+            int index = (int) SimulationState.mix(keys[i]) & (capacity - 1);
+            while (sourceSlots[index] >= 0) {
+                index = (index + 1) & (capacity - 1);
+            }
+            sourceKeys[index] = keys[i];
+            sourceSlots[index] = next++;
+        }
+        sourceRegisters = registers;
+        sourceEpochs = epochs;
+        sourceAlerted = alerted;
+        sources = next;
+    }
+    
+    private boolean isActive(int row) {
+        for (int s = 0; s < SLOTS; s++) {
+            if (currentEpoch - sourceEpochs[row * SLOTS + s] < SLOTS) return true;
+        }
+        return false;
+    }
+    
+    int trackedSources() {
+        return sources;
+    }
+}
+
+// Registry of running simulations read by the dashboard sampler. Event loops never publish: the
+// sampler reads their plain counters racily, which is good enough for a progress view and keeps
+// shared writes off the hot path. One event in 1024 is timed for the per-module latency figures.
+final class LiveMetrics {
+    static final int SAMPLE_INTERVAL = 1024;
+    
+    static final class Campaign {
+        final String name;
+        final SimulationState state;
+        final long[] sampledNanos;
+        final long[] samples;
+        
+        private Campaign(String name, SimulationState state) {
+            this.name = name;
+            this.state = state;
+            this.sampledNanos = new long[state.attempts.length];
+            this.samples = new long[state.attempts.length];
+        }
+        
+        void sample(int stage, long nanos) {
+            sampledNanos[stage] += nanos;
+            samples[stage]++;
+        }
+    }
+    
+    private static final List<Campaign> ACTIVE = new CopyOnWriteArrayList<>();
+    private static final long[][] FINISHED = new long[5][64];
+    private static long finishedEvents;
+    private static long finishedCampaigns;
+    
+    private LiveMetrics() {
+    }
+    
+    static Campaign begin(String name, SimulationState state) {
+        Campaign campaign = new Campaign(name, state);
+        ACTIVE.add(campaign);
+        return campaign;
+    }
+    
+    static void end(Campaign campaign) {
+        if (!ACTIVE.remove(campaign)) return;
+        synchronized (FINISHED) {
+            SimulationState state = campaign.state;
+            finishedEvents += state.eventsProcessed;
+            finishedCampaigns++;
+            add(FINISHED[0], state.attempts);
+            add(FINISHED[1], state.successes);
+            add(FINISHED[2], state.detections);
+            add(FINISHED[3], campaign.sampledNanos);
+            add(FINISHED[4], campaign.samples);
+        }
+    }
+    
+    private static void add(long[] totals, long[] values) {
+        for (int i = 0; i < Math.min(totals.length, values.length); i++) {
+            totals[i] += values[i];
+        }
+    }
+    
+    static List<Campaign> active() {
+        return ACTIVE;
+    }
+    
+    // Fills attempts, successes, detections, sampled nanos and sample counts across live and finished runs.
+    static long totals(long[][] into) {
+        long events;
+        synchronized (FINISHED) {
+            for (int i = 0; i < into.length; i++) {
+                System.arraycopy(FINISHED[i], 0, into[i], 0, Math.min(into[i].length, FINISHED[i].length));
+            }
+            events = finishedEvents;
+        }
+        for (Campaign campaign : ACTIVE) {
+            SimulationState state = campaign.state;
+            events += state.eventsProcessed;
+            add(into[0], state.attempts);
+            add(into[1], state.successes);
+            add(into[2], state.detections);
+            add(into[3], campaign.sampledNanos);
+            add(into[4], campaign.samples);
+        }
+        return events;
+    }
+    
+    static long finishedCampaigns() {
+        synchronized (FINISHED) {
+            return finishedCampaigns;
+        }
+    }
+}
+
+// Local dashboard on com.sun.net.httpserver. One sampler thread renders a JSON snapshot at a fixed
+// rate and hands it to every client through a single-slot mailbox, so a slow client only ever
+// skips frames: it never holds up the sampler, other clients, or the simulation.
+class MetricsDashboard implements Closeable {
+    static final int MAX_CLIENTS = 8;
+    private static final long STALL_NANOS = 10_000_000_000L;
+    
+    private static final class Client {
+        final Thread thread = Thread.currentThread();
+        volatile long writeStarted;
+        boolean active = true;
+        volatile boolean stalled;
+    }
+    
+    private final com.sun.net.httpserver.HttpServer server;
+    private final ScheduledExecutorService sampler;
+    private final ExecutorService handlers;
+    private final String[] attackNames;
+    private final String[] defenseNames;
+    private final long[][] totals = new long[5][64];
+    private final java.util.concurrent.atomic.AtomicInteger clients = new java.util.concurrent.atomic.AtomicInteger();
+    private final java.util.concurrent.atomic.AtomicLong dropped = new java.util.concurrent.atomic.AtomicLong();
+    private final List<Client> streams = new CopyOnWriteArrayList<>();
+    private final Object mailbox = new Object();
+    private byte[] frame = "data: {}\n\n".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    private long sequence;
+    private long lastEvents = -1;
+    private long lastSample;
+    private volatile boolean running = true;
+    
+    MetricsDashboard(int port, long intervalMillis, String[] attackNames, String[] defenseNames) throws IOException {
+        this.attackNames = attackNames;
+        this.defenseNames = defenseNames;
+        this.server = com.sun.net.httpserver.HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 16);
+        this.handlers = Executors.newFixedThreadPool(MAX_CLIENTS + 2, runnable -> {
+            Thread thread = new Thread(runnable, "dashboard-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(handlers);
+        server.createContext("/", this::page);
+        server.createContext("/events", this::stream);
+        server.createContext("/metrics", this::snapshot);
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dashboard-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.start();
+        sampler.scheduleAtFixedRate(this::publish, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        sampler.scheduleWithFixedDelay(this::dropStalled, 1, 1, TimeUnit.SECONDS);
+        Logger.info("Metrics dashboard listening on {}", getUrl());
+    }
+    
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+    
+    int getClients() {
+        return clients.get();
+    }
+    
+    long getDropped() {
+        return dropped.get();
+    }
+    
+    private void publish() {
+        try {
+            byte[] data = ("data: " + render() + "\n\n").getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            synchronized (mailbox) {
+                frame = data;
+                sequence++;
+                mailbox.notifyAll();
+            }
+        } catch (RuntimeException e) {
+            Logger.warn("Dashboard sample failed: {}", e.getMessage());
+        }
+    }
+    
+    // A write blocked on a client that stopped reading never returns on its own. The handler writes
+    // through the exchange's socket channel, which is interruptible: interrupting the blocked thread
+    // closes the connection and frees its slot.
+    private void dropStalled() {
+        long now = System.nanoTime();
+        for (Client client : streams) {
+            long started = client.writeStarted;
+            if (started == 0 || now - started < STALL_NANOS) continue;
+            synchronized (client) {
+                if (!client.active || client.stalled) continue;
+                client.stalled = true;
+                client.thread.interrupt();
+            }
+            Logger.warn("Dropping dashboard client stalled for {}s", (now - started) / 1_000_000_000L);
+        }
+    }
+    
+    String render() {
+        for (long[] row : totals) {
+            Arrays.fill(row, 0);
+        }
+        long events = LiveMetrics.totals(totals);
+        long now = System.nanoTime();
+        double rate = lastEvents < 0 ? 0 : (events - lastEvents) * 1e9 / Math.max(1, now - lastSample);
+        lastEvents = events;
+        lastSample = now;
+        
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"eventsPerSec\":").append(Math.round(Math.max(0, rate)));
+        json.append(",\"events\":").append(events);
+        json.append(",\"finishedCampaigns\":").append(LiveMetrics.finishedCampaigns());
+        json.append(",\"logBacklog\":").append(Logger.backlog());
+        json.append(",\"clients\":").append(clients.get());
+        json.append(",\"dropped\":").append(dropped.get());
+        json.append(",\"campaigns\":[");
+        int index = 0;
+        for (LiveMetrics.Campaign campaign : LiveMetrics.active()) {
+            SimulationState state = campaign.state;
+            if (index++ > 0) json.append(',');
+            json.append("{\"name\":");
+            appendString(json, campaign.name);
+            json.append(",\"clock\":");
+            appendString(json, SimulationEngine.formatTime(state.clock));
+            json.append(",\"events\":").append(state.eventsProcessed)
+                    .append(",\"queue\":").append(state.queue.size()).append('}');
+        }
+        json.append("],\"modules\":[");
+        for (int i = 0; i < attackNames.length; i++) {
+            if (i > 0) json.append(',');
+            long samples = totals[4][i];
+            json.append("{\"name\":");
+            appendString(json, attackNames[i]);
+            json.append(",\"attempts\":").append(totals[0][i])
+                    .append(",\"successes\":").append(totals[1][i]).append(",\"latencyNs\":")
+                    .append(samples == 0 ? 0 : totals[3][i] / samples).append('}');
+        }
+        json.append("],\"detections\":[");
+        for (int i = 0; i < defenseNames.length; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"name\":");
+            appendString(json, defenseNames[i]);
+            json.append(",\"count\":").append(totals[2][i]).append('}');
+        }
+        return json.append("]}").toString();
+    }
+    
+    // Campaign names carry the tenant, so every string is escaped; control characters would also
+    // break the one-line SSE framing.
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+    
+    private void stream(com.sun.net.httpserver.HttpExchange exchange) throws IOException {
+        if (clients.incrementAndGet() > MAX_CLIENTS) {
+            clients.decrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        Client client = new Client();
+        streams.add(client);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            long seen = 0;
+            while (running) {
+                byte[] data;
+                long current;
+                synchronized (mailbox) {
+                    while (running && sequence == seen) {
+                        mailbox.wait(1000);
+                    }
+                    data = frame;
+                    current = sequence;
+                }
+                if (seen != 0 && current - seen > 1) dropped.addAndGet(current - seen - 1);
+                seen = current;
+                client.writeStarted = System.nanoTime();
+                out.write(data);
+                out.flush();
+                client.writeStarted = 0;
+            }
+        } catch (IOException e) {
+            if (!client.stalled) Logger.debug("Dashboard client disconnected: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            if (!client.stalled) Thread.currentThread().interrupt();
+        } finally {
+            streams.remove(client);
+            synchronized (client) {
+                client.active = false;
+            }
+            // The watchdog's interrupt was meant for this client only; the server reuses the thread.
+            if (client.stalled) Thread.interrupted();
+            clients.decrementAndGet();
+        }
+    }
+    
+    private void snapshot(com.sun.net.httpserver.HttpExchange exchange) throws IOException {
+        byte[] data;
+        synchronized (mailbox) {
+            data = frame;
+        }
+        respond(exchange, "application/json", Arrays.copyOfRange(data, 6, data.length - 2));
+    }
+    
+    private void page(com.sun.net.httpserver.HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals("/")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        respond(exchange, "text/html; charset=utf-8", PAGE.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+    
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    @Override
+    public void close() {
+        running = false;
+        sampler.shutdownNow();
+        synchronized (mailbox) {
+            mailbox.notifyAll();
+        }
+        server.stop(0);
+        handlers.shutdownNow();
+        Logger.info("Metrics dashboard stopped.");
+    }
+    
+    private static final String PAGE = "<!DOCTYPE html><html><head><title>XILLEN APT Simulator</title><style>"
+            + "body{font-family:monospace;background:#111;color:#ddd;margin:2em}table{border-collapse:collapse;margin-bottom:1.5em}"
+            + "td,th{padding:2px 12px;text-align:right}th{color:#8cf}td:first-child,th:first-child{text-align:left}"
+            + "</style></head><body><h2>XILLEN APT Simulator - live metrics</h2><div id=summary></div>"
+            + "<h3>Active campaigns</h3><table id=campaigns></table><h3>Attack modules</h3><table id=modules></table>"
+            + "<h3>Detections</h3><table id=detections></table><script>"
+            + "function row(tag,cells){var tr=document.createElement('tr');cells.forEach(c=>{var cell=document.createElement(tag);"
+            + "cell.textContent=c;tr.appendChild(cell);});return tr;}"
+            + "function table(id,head,rows){document.getElementById(id).replaceChildren(row('th',head),...rows.map(r=>row('td',r)));}"
+            + "new EventSource('/events').onmessage=function(e){var m=JSON.parse(e.data);"
+            + "document.getElementById('summary').textContent=m.eventsPerSec.toLocaleString()+' events/sec, '"
+            + "+m.events.toLocaleString()+' events total, '+m.campaigns.length+' active campaigns, '"
+            + "+m.finishedCampaigns+' finished, log backlog '+m.logBacklog+', clients '+m.clients+', dropped frames '+m.dropped;"
+            + "table('campaigns',['Campaign','Clock','Events','Queue'],m.campaigns.map(c=>[c.name,c.clock,c.events.toLocaleString(),c.queue.toLocaleString()]));"
+            + "table('modules',['Module','Attempts','Successes','Latency (ns)'],m.modules.map(c=>[c.name,c.attempts.toLocaleString(),c.successes.toLocaleString(),c.latencyNs]));"
+            + "table('detections',['Defense','Detections'],m.detections.map(c=>[c.name,c.count.toLocaleString()]));};"
+            + "</script></body></html>";
+}
+
+enum JobPriority {
+    HIGH, NORMAL, LOW;
+    
+    static JobPriority parse(String value) {
+        if (value.isEmpty()) return NORMAL;
+        for (JobPriority priority : values()) {
+            if (priority.name().equalsIgnoreCase(value) || priority.name().substring(0, 1).equalsIgnoreCase(value)) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("Unknown priority: " + value);
+    }
+}
+
+interface JobBody {
+    String run(ScheduledJob job) throws Exception;
+}
+
+class ScheduledJob {
+    enum State { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+    
+    final long id;
+    final String tenant;
+    final String name;
+    final JobPriority priority;
+    final double cost;
+    final JobBody body;
+    final long submitted = System.nanoTime();
+    volatile State state = State.QUEUED;
+    volatile long started;
+    volatile long finished;
+    volatile String result = "";
+    volatile boolean cancelRequested;
+    Thread worker;
+    
+    ScheduledJob(long id, String tenant, String name, JobPriority priority, double cost, JobBody body) {
+        this.id = id;
+        this.tenant = tenant;
+        this.name = name;
+        this.priority = priority;
+        this.cost = Math.max(1e-3, cost);
+        this.body = body;
+    }
+    
+    // Long-running bodies poll this between slices of work.
+    boolean isCancelled() {
+        return cancelRequested || Thread.currentThread().isInterrupted();
+    }
+    
+    long waitNanos() {
+        long start = started;
+        return (start == 0 ? (state == State.QUEUED ? System.nanoTime() : finished) : start) - submitted;
+    }
+    
+    long runNanos() {
+        if (started == 0) return 0;
+        return (finished == 0 ? System.nanoTime() : finished) - started;
+    }
+}
+
+class SchedulerTenant {
+    final String name;
+    double weight = 1;
+    int maxRunning;
+    int maxQueued;
+    int running;
+    long completed;
+    long cancelled;
+    long rejected;
+    double lastFinish;
+    final PriorityQueue<ScheduledJob> queue = new PriorityQueue<>(
+            Comparator.<ScheduledJob>comparingInt(job -> job.priority.ordinal()).thenComparingLong(job -> job.id));
+    final LatencyHistogram waitMillis = new LatencyHistogram();
+    
+    SchedulerTenant(String name, int maxRunning, int maxQueued) {
+        this.name = name;
+        this.maxRunning = maxRunning;
+        this.maxQueued = maxQueued;
+    }
+}
+
+// Point-in-time copy of a tenant's counters, taken under the scheduler lock so callers can read it
+// without holding that lock.
+final class TenantSnapshot {
+    final String name;
+    final double weight;
+    final int maxRunning;
+    final int maxQueued;
+    final int queued;
+    final int running;
+    final long completed;
+    final long cancelled;
+    final long waitP50Millis;
+    final long waitP99Millis;
+    
+    TenantSnapshot(SchedulerTenant tenant) {
+        this.name = tenant.name;
+        this.weight = tenant.weight;
+        this.maxRunning = tenant.maxRunning;
+        this.maxQueued = tenant.maxQueued;
+        this.queued = tenant.queue.size();
+        this.running = tenant.running;
+        this.completed = tenant.completed;
+        this.cancelled = tenant.cancelled;
+        this.waitP50Millis = tenant.waitMillis.percentile(50);
+        this.waitP99Millis = tenant.waitMillis.percentile(99);
+    }
+}
+
+// Weighted fair queuing over a fixed worker pool. Priority orders jobs within a tenant; across
+// tenants the next job is the head with the smallest virtual start tag (ties to the earlier finish
+// tag), where a tenant's tag advances by cost / weight for every job it starts (start-time fair
+// queuing). Dispatch is O(tenants + log queued) under one lock and only happens on submit and
+// completion, so the cost per job does not grow with the backlog.
+class CampaignScheduler implements Closeable {
+    static final int DEFAULT_MAX_QUEUED = 1000;
+    private static final int RETAINED_JOBS = 10_000;
+    
+    private final int workers;
+    private final ExecutorService pool;
+    private final Map<String, SchedulerTenant> tenants = new LinkedHashMap<>();
+    private final LinkedHashMap<Long, ScheduledJob> jobs = new LinkedHashMap<>();
+    private long nextId = 1;
+    private int running;
+    private int queued;
+    private double virtualTime;
+    private boolean shutdown;
+    
+    CampaignScheduler(int workers) {
+        this.workers = workers;
+        this.pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "campaign-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    int getWorkers() {
+        return workers;
+    }
+    
+    synchronized ScheduledJob submit(String tenantName, String name, JobPriority priority, double cost, JobBody body) {
+        if (shutdown) throw new RejectedExecutionException("Scheduler is shut down");
+        SchedulerTenant tenant = tenant(tenantName);
+        if (tenant.queue.size() >= tenant.maxQueued) {
+            tenant.rejected++;
+            throw new RejectedExecutionException("Tenant " + tenantName + " already has " + tenant.queue.size() + " queued jobs");
+        }
+        ScheduledJob job = new ScheduledJob(nextId++, tenant.name, name, priority, cost, body);
+        jobs.put(job.id, job);
+        tenant.queue.add(job);
+        queued++;
+        prune();
+        dispatch();
+        return job;
+    }
+    
+    synchronized void setQuota(String tenantName, double weight, int maxRunning, int maxQueued) {
+        SchedulerTenant tenant = tenant(tenantName);
+        tenant.weight = weight;
+        tenant.maxRunning = maxRunning;
+        tenant.maxQueued = maxQueued;
+        dispatch();
+    }
+    
+    // Queued jobs are removed at once; running jobs are flagged and interrupted and stop at their next check.
+    synchronized boolean cancel(long id) {
+        ScheduledJob job = jobs.get(id);
+        if (job == null) return false;
+        if (job.state == ScheduledJob.State.QUEUED) {
+            tenants.get(job.tenant).queue.remove(job);
+            queued--;
+            job.finished = System.nanoTime();
+            job.state = ScheduledJob.State.CANCELLED;
+            tenants.get(job.tenant).cancelled++;
+            notifyAll();
+            return true;
+        }
+        if (job.state == ScheduledJob.State.RUNNING) {
+            job.cancelRequested = true;
+            if (job.worker != null) job.worker.interrupt();
+            return true;
+        }
+        return false;
+    }
+    
+    synchronized List<ScheduledJob> jobs() {
+        return new ArrayList<>(jobs.values());
+    }
+    
+    synchronized List<TenantSnapshot> tenants() {
+        List<TenantSnapshot> snapshots = new ArrayList<>(tenants.size());
+        for (SchedulerTenant tenant : tenants.values()) {
+            snapshots.add(new TenantSnapshot(tenant));
+        }
+        return Collections.unmodifiableList(snapshots);
+    }
+    
+    synchronized int getRunning() {
+        return running;
+    }
+    
+    synchronized int getQueued() {
+        return queued;
+    }
+    
+    synchronized boolean isIdle() {
+        return running == 0 && queued == 0;
+    }
+    
+    synchronized void awaitIdle() throws InterruptedException {
+        while (running > 0 || queued > 0) {
+            wait();
+        }
+    }
+    
+    private SchedulerTenant tenant(String name) {
+        return tenants.computeIfAbsent(name, key -> new SchedulerTenant(key, workers, DEFAULT_MAX_QUEUED));
+    }
+    
+    private void dispatch() {
+        while (running < workers && queued > 0) {
+            SchedulerTenant next = null;
+            double nextStart = Double.MAX_VALUE;
+            double nextFinish = Double.MAX_VALUE;
+            for (SchedulerTenant tenant : tenants.values()) {
+                if (tenant.queue.isEmpty() || tenant.running >= tenant.maxRunning) continue;
+                double start = Math.max(virtualTime, tenant.lastFinish);
+                double finish = start + tenant.queue.peek().cost / tenant.weight;
+                if (start < nextStart || (start == nextStart && finish < nextFinish)) {
+                    nextStart = start;
+                    nextFinish = finish;
+                    next = tenant;
+                }
+            }
+            if (next == null) return;
+            ScheduledJob job = next.queue.poll();
+            virtualTime = nextStart;
+            next.lastFinish = nextFinish;
+            next.running++;
+            running++;
+            queued--;
+            job.state = ScheduledJob.State.RUNNING;
+            job.started = System.nanoTime();
+            next.waitMillis.record((job.started - job.submitted) / 1_000_000);
+            pool.execute(() -> execute(job));
+        }
+    }
+    
+    private void execute(ScheduledJob job) {
+        synchronized (this) {
+            job.worker = Thread.currentThread();
+        }
+        ScheduledJob.State outcome;
+        try {
+            job.result = job.body.run(job);
+            outcome = job.isCancelled() ? ScheduledJob.State.CANCELLED : ScheduledJob.State.SUCCEEDED;
+        } catch (CancellationException | InterruptedException e) {
+            outcome = ScheduledJob.State.CANCELLED;
+        } catch (Exception e) {
+            job.result = e.getClass().getSimpleName() + ": " + e.getMessage();
+            outcome = job.cancelRequested ? ScheduledJob.State.CANCELLED : ScheduledJob.State.FAILED;
+        }
+        synchronized (this) {
+            job.worker = null;
+            Thread.interrupted();
+            job.finished = System.nanoTime();
+            job.state = outcome;
+            SchedulerTenant tenant = tenants.get(job.tenant);
+            tenant.running--;
+            if (outcome == ScheduledJob.State.CANCELLED) tenant.cancelled++;
+            else tenant.completed++;
+            running--;
+            if (outcome == ScheduledJob.State.FAILED) Logger.warn("Job #{} ({}) failed: {}", job.id, job.tenant, job.result);
+            else if (Logger.isDebugEnabled()) Logger.debug("Job #{} ({}) {}: {}", job.id, job.tenant, outcome, job.result);
+            if (!shutdown) dispatch();
+            notifyAll();
+        }
+    }
+    
+    // Keeps the job table bounded by forgetting the oldest finished jobs.
+    private void prune() {
+        Iterator<ScheduledJob> iterator = jobs.values().iterator();
+        while (jobs.size() > RETAINED_JOBS && iterator.hasNext()) {
+            ScheduledJob.State state = iterator.next().state;
+            if (state != ScheduledJob.State.QUEUED && state != ScheduledJob.State.RUNNING) iterator.remove();
+        }
+    }
+    
+    @Override
+    public void close() {
+        synchronized (this) {
+            shutdown = true;
+            for (SchedulerTenant tenant : tenants.values()) {
+                for (ScheduledJob job : tenant.queue) {
+                    job.state = ScheduledJob.State.CANCELLED;
+                    job.finished = System.nanoTime();
+                    tenant.cancelled++;
+                }
+                tenant.queue.clear();
+            }
+            queued = 0;
+            for (ScheduledJob job : jobs.values()) {
+                if (job.state == ScheduledJob.State.RUNNING) cancel(job.id);
+            }
+            notifyAll();
+        }
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) pool.shutdownNow();
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+class SchedulerLoadReport {
+    int jobs;
+    long elapsedNanos;
+    final LatencyHistogram waitMillis = new LatencyHistogram();
+    final Map<String, Long> firstHalf = new LinkedHashMap<>();
+}
+
+// Runs batches of identical CPU-bound jobs through a fresh scheduler to check that throughput holds
+// as the backlog grows, and how the first half of completions splits across weighted tenants.
+class SchedulerBenchmark {
+    static final String[] TENANTS = {"red-team", "blue-team", "purple-team", "training"};
+    static final double[] WEIGHTS = {4, 2, 1, 1};
+    
+    static SchedulerLoadReport run(int workers, int jobs, long workPerJob) throws InterruptedException {
+        SchedulerLoadReport report = new SchedulerLoadReport();
+        report.jobs = jobs;
+        java.util.concurrent.atomic.AtomicInteger completions = new java.util.concurrent.atomic.AtomicInteger();
+        String[] order = new String[jobs];
+        try (CampaignScheduler scheduler = new CampaignScheduler(workers)) {
+            for (int t = 0; t < TENANTS.length; t++) {
+                scheduler.setQuota(TENANTS[t], WEIGHTS[t], workers, jobs);
+            }
+            List<ScheduledJob> submitted = new ArrayList<>(jobs);
+            long started = System.nanoTime();
+            for (int i = 0; i < jobs; i++) {
+                String tenant = TENANTS[i % TENANTS.length];
+                JobPriority priority = JobPriority.values()[i / TENANTS.length % 3];
+                long seed = i;
+                submitted.add(scheduler.submit(tenant, "load " + i, priority, 1, job -> {
+                    long value = seed;
+                    for (long n = 0; n < workPerJob; n++) {
+                        value = SimulationState.mix(value);
+                    }
+                    order[completions.getAndIncrement()] = tenant;
+                    return Long.toHexString(value);
+                }));
+            }
+            scheduler.awaitIdle();
+            report.elapsedNanos = System.nanoTime() - started;
+            for (ScheduledJob job : submitted) {
+                report.waitMillis.record(job.waitNanos() / 1_000_000);
+            }
+        }
+        for (String tenant : TENANTS) {
+            report.firstHalf.put(tenant, 0L);
+        }
+        for (int i = 0; i < jobs / 2; i++) {
+            report.firstHalf.merge(order[i], 1L, Long::sum);
+        }
+        return report;
+    }
+}